@@ -5,8 +5,13 @@
 package edu.seg2105.client.backend;
 
 import ocsf.client.*;
+import ocsf.common.Envelope;
+import ocsf.common.EnvelopeCodec;
+import ocsf.common.LatencyHistogram;
+import ocsf.common.TracedMessage;
 
 import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.seg2105.client.common.*;
 
@@ -20,6 +25,26 @@ import edu.seg2105.client.common.*;
  */
 public class ChatClient extends AbstractClient
 {
+  //Class variables *************************************************
+
+  /**
+   * The commands typed by the user.  Those of the server are sent to it.
+   */
+  private static final CommandDispatcher<ChatClient> CLIENT_COMMANDS = new CommandDispatcher<ChatClient>()
+    .on("#quit", (client, line, args) -> client.clientQuit())
+    .on("#logoff", (client, line, args) -> client.clientLogoff())
+    .on("#sethost", ChatClient::clientSethost)
+    .on("#setport", ChatClient::clientSetport)
+    .on("#login", (client, line, args) -> client.clientLogin())
+    .on("#gethost", (client, line, args) -> client.clientGethost())
+    .on("#getport", (client, line, args) -> client.clientGetport())
+    .on("#latency", (client, line, args) -> client.clientLatency(line))
+    .on("#whisper", (client, line, args) -> client.clientServerCommand(line))
+    .on("#join", (client, line, args) -> client.clientServerCommand(line))
+    .on("#leave", (client, line, args) -> client.clientServerCommand(line))
+    .on("#channel", (client, line, args) -> client.clientServerCommand(line))
+    .otherwise((client, line, args) -> client.clientNoCommand());
+
   //Instance variables **********************************************
   
   /**
@@ -34,6 +59,41 @@ public class ChatClient extends AbstractClient
    */
   String loginId;
 
+  /**
+   * True while the chat messages sent are traced, so that their latency
+   * is measured.
+   */
+  private volatile boolean tracing = false;
+
+  /**
+   * The sequence number of the last chat message sent.
+   */
+  private long sequence = 0;
+
+  /**
+   * The sequence number of the last traced message of this client that
+   * came back from the server, and the number of those that did not come
+   * back in order.  Both are updated by the thread reading from the server
+   * and read or reset by the thread of the UI.
+   */
+  private volatile long echoedSequence = 0;
+  private final AtomicLong outOfSequence = new AtomicLong();
+
+  /**
+   * The time from sending a traced message to receiving it back.
+   */
+  private final LatencyHistogram roundTripLatency = new LatencyHistogram();
+
+  /**
+   * The time from the server relaying a traced message to receiving it.
+   */
+  private final LatencyHistogram fanOutLatency = new LatencyHistogram();
+
+  /**
+   * The time from another client sending a traced message to receiving it.
+   */
+  private final LatencyHistogram peerLatency = new LatencyHistogram();
+
   
   //Constructors ****************************************************
   
@@ -52,6 +112,7 @@ public class ChatClient extends AbstractClient
     super(host, port); //Call the superclass constructor
     this.loginId = loginId;
     this.clientUI = clientUI;
+    this.setCodec(new EnvelopeCodec()); //Exchange envelopes, in binary
     try {
       this.openConnection();
     } catch(IOException e) {
@@ -65,18 +126,24 @@ public class ChatClient extends AbstractClient
   //Instance methods ************************************************
     
   /**
-   * This method handles all data that comes in from the server.
+   * This method handles all data that comes in from the server.  The
+   * announcements of the server's operator go to the console, the rest
+   * to the UI.
    *
    * @param msg The message from the server.
    */
   public void handleMessageFromServer(Object msg) 
   {
-    String message = msg.toString();
-    if (message.startsWith("SERVER MESSAGE>")) {
-      System.out.println(message);
+    Object content = msg;
+    if (msg instanceof TracedMessage) {
+      this.recordLatency((TracedMessage) msg);
+      content = ((TracedMessage) msg).getPayload();
+    }
+    if (content instanceof Envelope && ((Envelope) content).getType() == Envelope.Type.SERVER) {
+      System.out.println(content);
       return;
     }
-    this.clientUI.display(message);
+    this.clientUI.display(content.toString());
   }
 
   /**
@@ -86,27 +153,14 @@ public class ChatClient extends AbstractClient
    */
   public void handleMessageFromClientUI(String message)
   {
-    if (message.startsWith("#")) {
-      if (message.equals("#quit")) {
-        this.clientQuit();
-      } else if (message.equals("#logoff")) {
-        this.clientLogoff();
-      } else if (message.startsWith("#sethost") && message.split(" ").length == 2) {
-        this.clientSethost(message);
-      } else if (message.startsWith("#setport") && message.split(" ").length == 2) {
-        this.clientSetport(message);
-      } else if (message.equals("#login")) {
-        this.clientLogin();
-      } else if (message.equals("#gethost")) {
-        this.clientGethost();
-      } else if (message.equals("#getport")) {
-        this.clientGetport();
-      } else {
-        this.clientNoCommand();
-      }
-    } else {
+    if (!CLIENT_COMMANDS.dispatch(this, message)) {
       try {
-        this.sendToServer(message);
+        Envelope chat = new Envelope(Envelope.Type.CHAT, this.loginId, null, ++this.sequence, message);
+        if (this.tracing) {
+          this.sendToServer(new TracedMessage(this.loginId, this.sequence, chat));
+        } else {
+          this.sendToServer(chat);
+        }
       } catch(IOException e) {
         this.clientUI.display
           ("Could not send message to server.  Terminating client.");
@@ -132,23 +186,27 @@ public class ChatClient extends AbstractClient
     }
   }
 
-  private void clientSethost(String message) {
-    if (this.isConnected()) {
+  private void clientSethost(String message, int hostStart) {
+    if (!CommandDispatcher.hasOneArgument(message, hostStart)) {
+      this.clientNoCommand();
+    } else if (this.isConnected()) {
       this.clientUI.display
         ("The #sethost command cannot be run when the client is connected to the server.");
     } else {
-      String newHost = message.split(" ")[1];
+      String newHost = message.substring(hostStart);
       this.setHost(newHost);
     }
   }
 
-  private void clientSetport(String message) {
-    if (this.isConnected()) {
+  private void clientSetport(String message, int portStart) {
+    if (!CommandDispatcher.hasOneArgument(message, portStart)) {
+      this.clientNoCommand();
+    } else if (this.isConnected()) {
       this.clientUI.display
         ("The #setport command cannot be run when the client is connected to the server.");
     } else {
       try {
-        int newPort = Integer.parseInt(message.split(" ")[1]);
+        int newPort = Integer.parseInt(message, portStart, message.length(), 10);
         this.setPort(newPort);
       } catch (NumberFormatException e) {
         this.clientUI.display
@@ -182,11 +240,79 @@ public class ChatClient extends AbstractClient
       ("Current port number: " + this.getPort());
   }
 
+  private void clientServerCommand(String message) {
+    if (!this.isConnected()) {
+      this.clientUI.display
+        ("This command can only be run when the client is connected to the server.");
+      return;
+    }
+    try {
+      this.sendToServer(new Envelope(Envelope.Type.COMMAND, message));
+    } catch(IOException e) {
+      this.clientUI.display
+        ("Could not send message to server.  Terminating client.");
+      this.quit();
+    }
+  }
+
+  private void clientLatency(String message) {
+    if (message.equals("#latency on")) {
+      this.roundTripLatency.reset();
+      this.fanOutLatency.reset();
+      this.peerLatency.reset();
+      this.echoedSequence = this.sequence;
+      this.outOfSequence.set(0);
+      this.tracing = true;
+      this.clientUI.display("Latency tracing is on.");
+    } else if (message.equals("#latency off")) {
+      this.tracing = false;
+      this.clientUI.display("Latency tracing is off.");
+    } else if (message.equals("#latency")) {
+      this.clientUI.display("Latency tracing is " + (this.tracing ? "on" : "off")
+        + ", " + this.outOfSequence.get() + " message(s) out of sequence.");
+      this.clientUI.display(this.formatLatency("Round trip", this.roundTripLatency));
+      this.clientUI.display(this.formatLatency("Server to client", this.fanOutLatency));
+      this.clientUI.display(this.formatLatency("From other clients", this.peerLatency));
+    } else {
+      this.clientNoCommand();
+    }
+  }
+
   private void clientNoCommand() {
     this.clientUI.display
       ("This command does not exist.");
   }
   
+  /**
+   * Helper function to measure the latency of a traced message received
+   *
+   * @param msg The message received from the server.
+   */
+  private void recordLatency(TracedMessage msg) {
+    long now = TracedMessage.now();
+    if (msg.getServerSentTime() != 0) {
+      this.fanOutLatency.record((now - msg.getServerSentTime()) * 1000);
+    }
+    if (this.loginId.equals(msg.getOrigin())) {
+      this.roundTripLatency.record((now - msg.getSentTime()) * 1000);
+      if (msg.getSequence() != this.echoedSequence + 1) {
+        this.outOfSequence.incrementAndGet();
+      }
+      this.echoedSequence = msg.getSequence();
+    } else {
+      this.peerLatency.record((now - msg.getSentTime()) * 1000);
+    }
+  }
+
+  /**
+   * Helper function to describe a latency histogram in one line
+   */
+  private String formatLatency(String name, LatencyHistogram latency) {
+    return String.format("%s (us): %d messages, p50 %d, p99 %d, p99.9 %d, max %d", name,
+      latency.getCount(), latency.getPercentile(50) / 1000, latency.getPercentile(99) / 1000,
+      latency.getPercentile(99.9) / 1000, latency.getMax() / 1000);
+  }
+
   /**
    * This method terminates the client.
    */
@@ -223,7 +349,7 @@ public class ChatClient extends AbstractClient
   @Override
   protected void connectionEstablished() {
     try {
-      this.sendToServer("#login " + this.loginId);
+      this.sendToServer(new Envelope(Envelope.Type.LOGIN, this.loginId, null, 0, null));
       System.out.println(this.loginId + " has logged on.");
     }
     catch(IOException e)
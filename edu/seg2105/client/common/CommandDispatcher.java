@@ -0,0 +1,225 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.client.common;
+
+/**
+ * A table of the commands understood by a client or a server, such as
+ * <code> #login </code> or <code> #join </code>, with the handler of each.
+ * A line is parsed in one pass, without regular expressions, substrings or
+ * arrays: the name of the command is the text up to the first space, looked
+ * up in a hash table by comparing regions of the line, and its arguments
+ * start after that space.  The handler takes the arguments it needs out of
+ * the line itself.
+ *
+ * @param <C> The context of the commands, such as the connection a line
+ *  came from.
+ */
+public class CommandDispatcher<C>
+{
+  //Class variables *************************************************
+
+  /**
+   * The character that starts a command.
+   */
+  final public static char COMMAND_PREFIX = '#';
+
+  //Instance variables **********************************************
+
+  /**
+   * The names of the commands, by hash, with linear probing.  The length is
+   * a power of two, at least twice the number of commands.
+   */
+  private String[] names = new String[16];
+
+  /**
+   * The handler of the command with the name at the same index.
+   */
+  private Handler<C>[] handlers = newHandlers(16);
+
+  /**
+   * The number of commands.
+   */
+  private int size = 0;
+
+  /**
+   * The handler of the commands that are not in the table, or null.
+   */
+  private Handler<C> unknownCommand;
+
+  //Instance methods ************************************************
+
+  /**
+   * Adds a command to the table, or replaces its handler.
+   *
+   * @param name The name of the command, with its prefix.
+   * @param handler The handler of the command.
+   * @return this dispatcher, to add more commands.
+   */
+  public CommandDispatcher<C> on(String name, Handler<C> handler)
+  {
+    if (name.isEmpty() || name.charAt(0) != COMMAND_PREFIX || name.indexOf(' ') >= 0) {
+      throw new IllegalArgumentException("Not a command name: " + name);
+    }
+    if (2 * (this.size + 1) > this.names.length) {
+      this.grow();
+    }
+    int index = this.insertionIndex(name);
+    if (this.names[index] == null) {
+      this.names[index] = name;
+      this.size++;
+    }
+    this.handlers[index] = handler;
+    return this;
+  }
+
+  /**
+   * Sets the handler of the lines that start like a command, but name none
+   * in the table.  Without one, those lines are not dispatched.
+   *
+   * @param handler The handler of unknown commands.
+   * @return this dispatcher.
+   */
+  public CommandDispatcher<C> otherwise(Handler<C> handler)
+  {
+    this.unknownCommand = handler;
+    return this;
+  }
+
+  /**
+   * Hands a line to the handler of its command.
+   *
+   * @param context The context of the command.
+   * @param line The line to dispatch.
+   * @return true if the line was a command and was handled, false if it is
+   *  not a command, or an unknown one and there is no handler for those.
+   */
+  public boolean dispatch(C context, String line)
+  {
+    int length = line.length();
+    if (length == 0 || line.charAt(0) != COMMAND_PREFIX) {
+      return false;
+    }
+
+    // Find the end of the name, hashing it on the way like String.hashCode
+    int hash = 0;
+    int nameEnd = 0;
+    char c;
+    while (nameEnd < length && (c = line.charAt(nameEnd)) != ' ') {
+      hash = 31 * hash + c;
+      nameEnd++;
+    }
+    int argumentStart = nameEnd < length ? nameEnd + 1 : length;
+
+    int mask = this.names.length - 1;
+    for (int index = spread(hash) & mask; this.names[index] != null; index = (index + 1) & mask) {
+      String name = this.names[index];
+      if (name.length() == nameEnd && line.regionMatches(0, name, 0, nameEnd)) {
+        this.handlers[index].handle(context, line, argumentStart);
+        return true;
+      }
+    }
+
+    if (this.unknownCommand == null) {
+      return false;
+    }
+    this.unknownCommand.handle(context, line, argumentStart);
+    return true;
+  }
+
+  /**
+   * @return the index of a name in the table, or of the free slot for it.
+   */
+  private int insertionIndex(String name)
+  {
+    int mask = this.names.length - 1;
+    int index = spread(name.hashCode()) & mask;
+    while (this.names[index] != null && !this.names[index].equals(name)) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  /**
+   * Doubles the size of the table.
+   */
+  private void grow()
+  {
+    String[] oldNames = this.names;
+    Handler<C>[] oldHandlers = this.handlers;
+    this.names = new String[oldNames.length * 2];
+    this.handlers = newHandlers(oldNames.length * 2);
+    for (int i = 0; i < oldNames.length; i++) {
+      if (oldNames[i] != null) {
+        int index = this.insertionIndex(oldNames[i]);
+        this.names[index] = oldNames[i];
+        this.handlers[index] = oldHandlers[i];
+      }
+    }
+  }
+
+  //Class methods ***************************************************
+
+  /**
+   * Returns the end of the argument of a command that starts at an index:
+   * the next space, or the end of the line.
+   *
+   * @param line The line of the command.
+   * @param start Where the argument starts.
+   * @return the index just after the argument.
+   */
+  public static int argumentEnd(String line, int start)
+  {
+    int end = line.indexOf(' ', start);
+    return end < 0 ? line.length() : end;
+  }
+
+  /**
+   * Tells if a command has exactly one argument, starting at an index.
+   *
+   * @param line The line of the command.
+   * @param start Where the arguments start.
+   * @return true if there is an argument and no space after it.
+   */
+  public static boolean hasOneArgument(String line, int start)
+  {
+    return start < line.length() && line.indexOf(' ', start) < 0;
+  }
+
+  /**
+   * Mixes the high bits of a hash into the low ones, which index the table.
+   */
+  private static int spread(int hash)
+  {
+    return hash ^ (hash >>> 16);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <C> Handler<C>[] newHandlers(int length)
+  {
+    return (Handler<C>[]) new Handler<?>[length];
+  }
+
+  //Inner interfaces ************************************************
+
+  /**
+   * The handler of a command.
+   *
+   * @param <C> The context of the command.
+   */
+  @FunctionalInterface
+  public interface Handler<C>
+  {
+    /**
+     * Handles a command.
+     *
+     * @param context The context of the command.
+     * @param line The whole line of the command.
+     * @param argumentStart Where the arguments start in the line: just after
+     *  the first space, or the length of the line if there is none.
+     */
+    void handle(C context, String line, int argumentStart);
+  }
+}
+//End of CommandDispatcher class
@@ -4,10 +4,16 @@ package edu.seg2105.edu.server.backend;
 // license found at www.lloseng.com 
 
 
+import ocsf.common.AsyncLogger;
+import ocsf.common.Envelope;
+import ocsf.common.EnvelopeCodec;
+import ocsf.common.TracedMessage;
 import ocsf.server.*;
 import edu.seg2105.edu.server.ui.ServerConsole;
 import edu.seg2105.client.common.*;
 import java.io.*;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class overrides some of the methods in the abstract 
@@ -27,6 +33,40 @@ public class EchoServer extends AbstractServer
    */
   final public static int DEFAULT_PORT = 5555;
 
+  /**
+   * The log of the server's events.  Written asynchronously, so that logging
+   * a message never holds up its handling.
+   */
+  private static final AsyncLogger LOG = AsyncLogger.getLogger("EchoServer");
+
+  /**
+   * The channel every client is in after logging on or leaving a channel.
+   */
+  final public static String DEFAULT_CHANNEL = "general";
+
+  /**
+   * The login Id of a client, set once it has logged on.
+   */
+  final public static SessionKey<String> LOGIN_ID = new SessionKey<String>("loginId");
+
+  /**
+   * The channel a client is in.
+   */
+  final public static SessionKey<String> CHANNEL = new SessionKey<String>("channel");
+
+  /**
+   * The commands typed on the server's console.
+   */
+  private static final CommandDispatcher<EchoServer> SERVER_COMMANDS = new CommandDispatcher<EchoServer>()
+    .on("#quit", (server, line, args) -> server.serverQuit())
+    .on("#stop", (server, line, args) -> server.serverStop())
+    .on("#close", (server, line, args) -> server.serverClose())
+    .on("#setport", EchoServer::serverSetport)
+    .on("#start", (server, line, args) -> server.serverStart())
+    .on("#getport", (server, line, args) -> server.serverGetport())
+    .on("#stats", (server, line, args) -> server.serverStats())
+    .otherwise((server, line, args) -> server.serverNoCommand());
+
   //Instance variables **********************************************
 
   /**
@@ -34,24 +74,59 @@ public class EchoServer extends AbstractServer
    * the display method in the client.
    */
   ChatIF serverUI; 
+
+  /**
+   * The connection of each logged on client, by login Id.  Allows a message
+   * to be delivered to one user without going through every connection.
+   */
+  private final ConcurrentHashMap<String, ConnectionToClient> clientsByLoginId =
+    new ConcurrentHashMap<String, ConnectionToClient>();
+
+  /**
+   * The members of each channel, by channel name.  A chat message only goes
+   * to the members of its sender's channel.  Empty channels are removed.
+   */
+  private final ConcurrentHashMap<String, Set<ConnectionToClient>> channels =
+    new ConcurrentHashMap<String, Set<ConnectionToClient>>();
+
+  /**
+   * The commands a client can send.  A line of text that is not one of them
+   * is a chat message.
+   */
+  private final CommandDispatcher<ConnectionToClient> clientCommands =
+    new CommandDispatcher<ConnectionToClient>()
+      .on("#login", (client, line, args) ->
+        this.handleLoginFromClient(line.substring(args, CommandDispatcher.argumentEnd(line, args)), client))
+      .on("#whisper", this::handleWhisperFromClient)
+      .on("#join", (client, line, args) -> this.handleJoinFromClient(line.substring(args).trim(), client))
+      .on("#leave", (client, line, args) -> this.handleJoinFromClient(DEFAULT_CHANNEL, client))
+      .on("#channel", (client, line, args) ->
+        client.sendToClientAsync(new Envelope(Envelope.Type.INFO,
+          "You are in channel " + client.getAttribute(CHANNEL) + ".")));
   
   //Constructors ****************************************************
   
   /**
-   * Constructs an instance of the echo server.
+   * Constructs an instance of the echo server.  Messages are exchanged as
+   * envelopes, in binary.
    *
    * @param port The port number to connect on.
    */
   public EchoServer(int port) 
   {
     super(port);
+    this.setCodec(new EnvelopeCodec());
   }
 
   
   //Instance methods ************************************************
   
   /**
-   * This method handles any messages received from the client.
+   * This method handles any messages received from the client.  Envelopes
+   * are handled according to their type; a line of text, from a client that
+   * does not send envelopes, is either a command or a chat message.  A traced
+   * message is relayed with the time it was received and sent, so that the
+   * clients can measure its latency.
    *
    * @param msg The message received from the client.
    * @param client The connection from which the message originated.
@@ -59,42 +134,81 @@ public class EchoServer extends AbstractServer
   public void handleMessageFromClient
     (Object msg, ConnectionToClient client)
   {
-    String message = msg.toString();
-    System.out.println("Message received: " + message + " from " + client.getInfo("loginId"));
-    
-    if (message.startsWith("#login")) {
-      this.handleFirstLoginFromClient(message, client);
+    long receivedTime = msg instanceof TracedMessage ? TracedMessage.now() : 0;
+    TracedMessage trace = msg instanceof TracedMessage ? (TracedMessage) msg : null;
+    Object content = trace == null ? msg : trace.getPayload();
+    LOG.info("Message received: {} from {}", content, client.getAttribute(LOGIN_ID));
+
+    if (content instanceof Envelope) {
+      Envelope envelope = (Envelope) content;
+      switch (envelope.getType()) {
+        case LOGIN:
+          this.handleLoginFromClient(envelope.getSender(), client);
+          break;
+        case CHAT:
+          this.sendToChannel(client, envelope.getSequence(), envelope.getPayload(), trace, receivedTime);
+          break;
+        case COMMAND:
+          if (!this.clientCommands.dispatch(client, String.valueOf(envelope.getPayload()))) {
+            client.sendToClientAsync(new Envelope(Envelope.Type.ERROR, "This command does not exist."));
+          }
+          break;
+        default:
+          client.sendToClientAsync(new Envelope(Envelope.Type.ERROR,
+            "A client cannot send " + envelope.getType() + " messages."));
+      }
     } else {
-      this.sendToAllClients(client.getInfo("loginId") + " - " + msg);
+      String line = String.valueOf(content);
+      if (!this.clientCommands.dispatch(client, line)) {
+        this.sendToChannel(client, 0, line, trace, receivedTime);
+      }
     }
-    
   }
 
   /**
-   * Helper function to handle the first message sent from a client and set its loginId
+   * Helper function to handle the login of a client and set its loginId
    * 
-   * @param message The message received from the client (starting with #login)
+   * @param loginId The loginId the client logs in with.
    * @param client The connection from which the message originated.
    */
-  private void handleFirstLoginFromClient(String message, ConnectionToClient client) {
+  private void handleLoginFromClient(String loginId, ConnectionToClient client) {
     try {
-      String loginId = message.split(" ")[1];
-      if (client.getInfo("loginId") == null) {
-        client.setInfo("loginId", loginId);
-        System.out.println(loginId + " has logged on.");
-      } else {
-        client.sendToClient("Error: Already logged in.  Terminating Client.");
+      if (loginId == null || loginId.isEmpty() || loginId.indexOf(' ') >= 0) {
+        throw new IllegalArgumentException("Invalid loginId");
+      }
+      if (client.getAttribute(LOGIN_ID) != null) {
+        client.sendToClient(new Envelope(Envelope.Type.ERROR, "Already logged in.  Terminating Client."));
+        try {
+          client.closeWhenFlushed();
+        } catch(IOException e) {
+          this.serverUI.display
+            ("Could not close the client successfully.  Terminating server.");
+          System.exit(0);
+        }
+      } else if (this.clientsByLoginId.putIfAbsent(loginId, client) != null) {
+        client.sendToClient(new Envelope(Envelope.Type.ERROR,
+          loginId + " is already logged on.  Terminating Client."));
         try {
-          client.close();
+          client.closeWhenFlushed();
         } catch(IOException e) {
           this.serverUI.display
             ("Could not close the client successfully.  Terminating server.");
           System.exit(0);
         }
+      } else {
+        client.setAttribute(LOGIN_ID, loginId);
+        this.joinChannel(DEFAULT_CHANNEL, client);
+
+        // The client may have closed before its login Id was set, in which
+        // case nothing else removes it from the index
+        if (!client.isAlive()) {
+          this.forgetLoginId(client);
+          return;
+        }
+        LOG.info("{} has logged on.", loginId);
       }
     } catch (Exception e) {
-      System.out.println
-        ("Error with the loginId.  Terminating Client.");
+      LOG.warn("Error with the loginId.  Terminating Client.");
       try {
         client.close();
       } catch(IOException ex) {
@@ -105,31 +219,122 @@ public class EchoServer extends AbstractServer
     }
   }
 
+  /**
+   * Helper function to deliver a private message to a single user
+   * 
+   * @param client The connection from which the message originated.
+   * @param message The message received from the client (#whisper user text)
+   * @param userStart Where the recipient starts in the message.
+   */
+  private void handleWhisperFromClient(ConnectionToClient client, String message, int userStart) {
+    int userEnd = message.indexOf(' ', userStart);
+    if (userEnd < 0) {
+      client.sendToClientAsync(new Envelope(Envelope.Type.ERROR, "Usage is #whisper <loginId> <message>"));
+      return;
+    }
+
+    String recipient = message.substring(userStart, userEnd);
+    String text = message.substring(userEnd + 1);
+    Envelope whisper = new Envelope(Envelope.Type.PRIVATE, client.getAttribute(LOGIN_ID), null, 0, text);
+    if (!this.sendToLoginId(recipient, whisper)) {
+      client.sendToClientAsync(new Envelope(Envelope.Type.ERROR, recipient + " is not logged on."));
+    }
+  }
+
+  /**
+   * Helper function to move a client to another channel
+   * 
+   * @param channel The name of the channel to join.
+   * @param client The connection from which the command originated.
+   */
+  private void handleJoinFromClient(String channel, ConnectionToClient client) {
+    if (channel.isEmpty() || channel.indexOf(' ') >= 0) {
+      client.sendToClientAsync(new Envelope(Envelope.Type.ERROR, "Usage is #join <channel>"));
+      return;
+    }
+    this.leaveChannel(client);
+    this.joinChannel(channel, client);
+    client.sendToClientAsync(new Envelope(Envelope.Type.INFO, "You are now in channel " + channel + "."));
+  }
+
+  /**
+   * Sends a chat message to every member of a client's channel, in one
+   * envelope naming the client and the channel, the default channel
+   * excepted.
+   *
+   * @param client The client whose channel receives the message.
+   * @param sequence The number of the message among those of the client.
+   * @param text The text of the message.
+   * @param trace The traced message being relayed, or null.
+   * @param receivedTime When the traced message was received.
+   */
+  private void sendToChannel(ConnectionToClient client, long sequence, String text,
+    TracedMessage trace, long receivedTime) {
+    String channel = client.getAttribute(CHANNEL);
+    Set<ConnectionToClient> members = channel == null ? null : this.channels.get(channel);
+    if (members != null) {
+      Envelope envelope = new Envelope(Envelope.Type.CHAT, client.getAttribute(LOGIN_ID),
+        DEFAULT_CHANNEL.equals(channel) ? null : channel, sequence, text);
+      this.sendToClients(members, trace == null ? envelope : trace.relay(envelope, receivedTime));
+    }
+  }
+
+  /**
+   * Helper function to add a client to a channel, creating the channel if
+   * needed
+   */
+  private void joinChannel(String channel, ConnectionToClient client) {
+    client.setAttribute(CHANNEL, channel);
+    this.channels.compute(channel, (name, members) -> {
+      if (members == null) {
+        members = ConcurrentHashMap.newKeySet();
+      }
+      members.add(client);
+      return members;
+    });
+
+    // Undo the join of a client that closed while joining
+    if (!client.isAlive()) {
+      this.leaveChannel(client);
+    }
+  }
+
+  /**
+   * Helper function to remove a client from its channel, removing the
+   * channel if it is left empty
+   */
+  private void leaveChannel(ConnectionToClient client) {
+    String channel = client.getAttribute(CHANNEL);
+    if (channel != null) {
+      this.channels.computeIfPresent(channel, (name, members) -> {
+        members.remove(client);
+        return members.isEmpty() ? null : members;
+      });
+    }
+  }
+
+  /**
+   * Sends a message to the user logged on with the given Id, without
+   * waiting for it to be written.
+   *
+   * @param loginId The login Id of the recipient.
+   * @param msg The message to send.
+   * @return true if the user is logged on and the message was queued.
+   */
+  public boolean sendToLoginId(String loginId, Object msg) {
+    ConnectionToClient client = this.clientsByLoginId.get(loginId);
+    return client != null && client.sendToClientAsync(msg);
+  }
+
   /**
    * This method handles all data coming from the UI            
    *
    * @param message The message from the UI.    
    */
   public void handleMessageFromServerUI(String message) {
-    if (message.startsWith("#")) {
-      if (message.equals("#quit")) {
-        this.serverQuit();
-      } else if (message.equals("#stop")) {
-        this.serverStop();
-      } else if (message.equals("#close")) {
-        this.serverClose();
-      } else if (message.startsWith("#setport") && message.split(" ").length == 2) {
-        this.serverSetport(message);
-      } else if (message.equals("#start")) {
-        this.serverStart();
-      } else if (message.equals("#getport")) {
-        this.serverGetport();
-      } else {
-        this.serverNoCommand();
-      }
-    } else {
+    if (!SERVER_COMMANDS.dispatch(this, message)) {
       this.serverUI.display(message);
-      this.sendToAllClients("SERVER MESSAGE> " + message);
+      this.sendToAllClients(new Envelope(Envelope.Type.SERVER, message));
     }
   }
 
@@ -140,10 +345,16 @@ public class EchoServer extends AbstractServer
     try {
       this.close();
     } catch(IOException e) {}
-    System.out.println("Server is quitting.");
+    LOG.info("Server is quitting.");
     System.exit(0);
   }
 
+  private void serverStats() {
+    for (String line : this.getMetrics().report().split(System.lineSeparator())) {
+      this.serverUI.display(line);
+    }
+  }
+
   private void serverStop() {
     this.stopListening();
   }
@@ -158,13 +369,15 @@ public class EchoServer extends AbstractServer
     }
   }
 
-  private void serverSetport(String message) {
-    if (this.isListening()) {
+  private void serverSetport(String message, int portStart) {
+    if (!CommandDispatcher.hasOneArgument(message, portStart)) {
+      this.serverNoCommand();
+    } else if (this.isListening()) {
       this.serverUI.display
         ("The #setport command cannot be run when the server is listening to connections.");
     } else {
       try {
-        int newPort = Integer.parseInt(message.split(" ")[1]);
+        int newPort = Integer.parseInt(message, portStart, message.length(), 10);
         this.setPort(newPort);
       } catch (NumberFormatException e) {
         serverUI.display
@@ -205,8 +418,7 @@ public class EchoServer extends AbstractServer
   @Override
   protected void serverStarted()
   {
-    System.out.println
-      ("Server listening for connections on port " + this.getPort());
+    LOG.info("Server listening for connections on port {}", this.getPort());
   }
   
   /**
@@ -216,26 +428,36 @@ public class EchoServer extends AbstractServer
   @Override
   protected void serverStopped()
   {
-    System.out.println
-      ("Server has stopped listening for connections.");
+    LOG.info("Server has stopped listening for connections.");
   }
 
   @Override
   protected void clientConnected(ConnectionToClient client) {
-    System.out.println
-      ("A new client has connected to the server.");
+    LOG.info("A new client has connected to the server.");
   }
 
   @Override
-  synchronized protected void clientDisconnected(ConnectionToClient client) {
-    System.out.println
-      (client.getInfo("loginId") + " has disconnected from server.");
+  protected void clientDisconnected(ConnectionToClient client) {
+    this.forgetLoginId(client);
+    LOG.info("{} has disconnected from server.", client.getAttribute(LOGIN_ID));
   }
 
   @Override
-  synchronized protected void clientException(ConnectionToClient client, Throwable exception) {
-    System.out.println
-      (client.getInfo("loginId") + " has disconnected from server.");
+  protected void clientException(ConnectionToClient client, Throwable exception) {
+    this.forgetLoginId(client);
+    LOG.info("{} has disconnected from server.", client.getAttribute(LOGIN_ID));
+    LOG.debug("Connection of {} failed", client.getAttribute(LOGIN_ID), exception);
+  }
+
+  /**
+   * Helper function to remove a client that is gone from the login Id index
+   */
+  private void forgetLoginId(ConnectionToClient client) {
+    String loginId = client.getAttribute(LOGIN_ID);
+    if (loginId != null) {
+      this.clientsByLoginId.remove(loginId, client);
+    }
+    this.leaveChannel(client);
   }
   
   //Class methods ***************************************************
@@ -284,7 +506,16 @@ public class EchoServer extends AbstractServer
     } 
     catch (Exception ex) 
     {
-      System.out.println("ERROR - Could not listen for clients!");
+      LOG.error("ERROR - Could not listen for clients!", ex);
+    }
+
+    try
+    {
+      sv.registerMetricsMBean(); //Make the metrics visible to JConsole
+    }
+    catch (Exception ex)
+    {
+      LOG.warn("Could not register the server metrics with JMX", ex);
     }
   }
 }
@@ -0,0 +1,82 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ocsf.server.*;
+
+/**
+ * Measures <code> AbstractServer.sendToAllClients </code> with a number of
+ * loopback clients.  The send queues are bounded and the BLOCK policy
+ * applies, so the rate measured is the rate at which broadcasts are
+ * written out, and the CPU time per operation is the cost of one broadcast
+ * to all the clients.
+ * <p>
+ * The modes compare encoding once per broadcast, with frames in blocking or
+ * non-blocking mode, against serializing for each client, with object
+ * streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Docsf.log.level=OFF")
+public class BroadcastBenchmark
+{
+  //Instance variables **********************************************
+
+  /**
+   * The number of clients.
+   */
+  @Param({"10", "1000", "10000"})
+  public int clients;
+
+  /**
+   * "nio" for frames on event loops, "frames" for frames in blocking mode,
+   * "object" for object streams in blocking mode.
+   */
+  @Param({"nio", "frames", "object"})
+  public String mode;
+
+  private final String message = "alice - a chat line of a typical length, broadcast to everyone";
+
+  private AbstractServer server;
+
+  private Sink sink;
+
+  //Instance methods ************************************************
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    boolean objectStreams = this.mode.equals("object");
+    int port = Servers.port();
+    this.server = Servers.newServer(port, this.mode.equals("nio") ? 2 : 0,
+      objectStreams ? null : SendBenchmark.codecFor("serialization"));
+    this.server.setSendQueueCapacity(64);
+    this.server.setSlowConsumerPolicy(SlowConsumerPolicy.BLOCK);
+    this.server.setBacklog(Math.max(128, this.clients));
+    this.server.listen();
+    this.sink = new Sink(port, this.clients, objectStreams);
+    Servers.awaitClients(this.server, this.clients);
+  }
+
+  @Benchmark
+  public void sendToAllClients()
+  {
+    this.server.sendToAllClients(this.message);
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    Servers.close(this.server, this.sink);
+  }
+}
+//End of BroadcastBenchmark class
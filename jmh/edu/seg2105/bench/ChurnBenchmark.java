@@ -0,0 +1,81 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.bench;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ocsf.server.AbstractServer;
+
+/**
+ * Measures connection churn: a client connects, the server registers it,
+ * and the client disconnects.  Each operation waits for the server to
+ * register the connection, so the rate measured includes the accept loop
+ * and the client registry.  Some connections stay open throughout, so that
+ * the registry is not empty.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Docsf.log.level=OFF")
+public class ChurnBenchmark
+{
+  //Instance variables **********************************************
+
+  /**
+   * The number of connections that stay open.
+   */
+  @Param({"10", "1000", "10000"})
+  public int standing;
+
+  /**
+   * "nio" for event loops, "frames" for blocking mode.
+   */
+  @Param({"nio", "frames"})
+  public String mode;
+
+  private int port;
+
+  private AbstractServer server;
+
+  private Sink sink;
+
+  //Instance methods ************************************************
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    this.port = Servers.port();
+    this.server = Servers.newServer(this.port, this.mode.equals("nio") ? 2 : 0,
+      SendBenchmark.codecFor("serialization"));
+    this.server.setBacklog(Math.max(128, this.standing));
+    this.server.listen();
+    this.sink = new Sink(this.port, this.standing, false);
+    Servers.awaitClients(this.server, this.standing);
+  }
+
+  @Benchmark
+  public void connectDisconnect() throws Exception
+  {
+    long connections = this.server.getMetrics().getTotalConnections();
+    SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", this.port));
+    while (this.server.getMetrics().getTotalConnections() == connections) {
+      Thread.onSpinWait();
+    }
+    channel.close();
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    Servers.close(this.server, this.sink);
+  }
+}
+//End of ChurnBenchmark class
@@ -0,0 +1,86 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import edu.seg2105.edu.server.backend.EchoServer;
+import ocsf.client.AbstractClient;
+import ocsf.common.Envelope;
+import ocsf.common.EnvelopeCodec;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * Measures <code> EchoServer.handleMessageFromClient </code> for one kind of
+ * line from a logged on client, sent in an envelope as <code> ChatClient
+ * </code> does: the parsing of the line and the work of the command,
+ * including queueing the reply.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Docsf.log.level=OFF")
+public class CommandBenchmark
+{
+  //Instance variables **********************************************
+
+  /**
+   * The line the client sends.
+   */
+  @Param({"hello", "#channel", "#whisper nobody hi", "#join bench"})
+  public String line;
+
+  private Envelope message;
+
+  private EchoServer server;
+
+  private AbstractClient user;
+
+  private ConnectionToClient client;
+
+  //Instance methods ************************************************
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    this.message = this.line.startsWith("#") ? new Envelope(Envelope.Type.COMMAND, this.line)
+      : new Envelope(Envelope.Type.CHAT, "bench", null, 1, this.line);
+
+    int port = Servers.port();
+    this.server = new EchoServer(port);
+    this.server.listen();
+    this.user = new AbstractClient("localhost", port) {
+      @Override
+      protected void handleMessageFromServer(Object msg) {}
+    };
+    this.user.setCodec(new EnvelopeCodec());
+    this.user.openConnection();
+    this.user.sendToServer(new Envelope(Envelope.Type.LOGIN, "bench", null, 0, null));
+    this.client = Servers.awaitClients(this.server, 1)[0];
+    while (this.client.getAttribute(EchoServer.LOGIN_ID) == null) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Benchmark
+  public void handleMessageFromClient()
+  {
+    this.server.handleMessageFromClient(this.message, this.client);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception
+  {
+    if (this.user != null) {
+      this.user.closeConnection();
+    }
+    Servers.close(this.server);
+  }
+}
+//End of CommandBenchmark class
@@ -0,0 +1,147 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import edu.seg2105.client.common.CommandDispatcher;
+
+/**
+ * Compares the parsing of the commands typed in a <code> ChatClient </code>
+ * by a <code> CommandDispatcher </code> with the chain of
+ * <code> startsWith </code>, <code> equals </code> and <code> split </code>
+ * calls it replaces.  The handlers only take their arguments out of the
+ * line, as the real ones do, so the measure is the cost of parsing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParsingBenchmark
+{
+  //Class variables *************************************************
+
+  /**
+   * The lines parsed, in turn: a chat message, commands with and without
+   * arguments, and an unknown command.
+   */
+  private static final String[] LINES = {
+    "hello everyone", "#setport 5555", "#sethost localhost", "#whisper bob hi there",
+    "#channel", "#getport", "#latency on", "#nosuch command"
+  };
+
+  //Instance variables **********************************************
+
+  /**
+   * "dispatcher" for a CommandDispatcher, "split" for the chain of
+   * comparisons and splits.
+   */
+  @Param({"split", "dispatcher"})
+  public String parser;
+
+  private boolean dispatcher;
+
+  private final CommandDispatcher<CommandParsingBenchmark> commands =
+    new CommandDispatcher<CommandParsingBenchmark>()
+      .on("#quit", (bench, line, args) -> bench.handled(1))
+      .on("#logoff", (bench, line, args) -> bench.handled(2))
+      .on("#sethost", (bench, line, args) -> {
+        if (CommandDispatcher.hasOneArgument(line, args)) {
+          bench.handled(line.substring(args).length());
+        } else {
+          bench.handled(0);
+        }
+      })
+      .on("#setport", (bench, line, args) -> {
+        if (CommandDispatcher.hasOneArgument(line, args)) {
+          bench.handled(Integer.parseInt(line, args, line.length(), 10));
+        } else {
+          bench.handled(0);
+        }
+      })
+      .on("#login", (bench, line, args) -> bench.handled(3))
+      .on("#gethost", (bench, line, args) -> bench.handled(4))
+      .on("#getport", (bench, line, args) -> bench.handled(5))
+      .on("#latency", (bench, line, args) -> bench.handled(line.length()))
+      .on("#whisper", (bench, line, args) -> bench.handled(line.length()))
+      .on("#join", (bench, line, args) -> bench.handled(line.length()))
+      .on("#leave", (bench, line, args) -> bench.handled(line.length()))
+      .on("#channel", (bench, line, args) -> bench.handled(line.length()))
+      .otherwise((bench, line, args) -> bench.handled(0));
+
+  private int next = 0;
+
+  /**
+   * What the handlers return, returned by each operation so that their
+   * work is not optimized away.
+   */
+  private long sink = 0;
+
+  //Instance methods ************************************************
+
+  @Setup
+  public void setUp()
+  {
+    this.dispatcher = this.parser.equals("dispatcher");
+  }
+
+  @Benchmark
+  public long commandParsing()
+  {
+    String line = LINES[this.next++ & 7];
+    if (this.dispatcher) {
+      if (!this.commands.dispatch(this, line)) {
+        this.handled(line.length());
+      }
+    } else {
+      this.parseWithSplit(line);
+    }
+    return this.sink;
+  }
+
+  private void handled(long value)
+  {
+    this.sink += value;
+  }
+
+  /**
+   * The parsing of ChatClient.handleMessageFromClientUI before the
+   * dispatcher.
+   */
+  private void parseWithSplit(String message)
+  {
+    if (message.startsWith("#")) {
+      if (message.equals("#quit")) {
+        this.handled(1);
+      } else if (message.equals("#logoff")) {
+        this.handled(2);
+      } else if (message.startsWith("#sethost") && message.split(" ").length == 2) {
+        this.handled(message.split(" ")[1].length());
+      } else if (message.startsWith("#setport") && message.split(" ").length == 2) {
+        this.handled(Integer.parseInt(message.split(" ")[1]));
+      } else if (message.equals("#login")) {
+        this.handled(3);
+      } else if (message.equals("#gethost")) {
+        this.handled(4);
+      } else if (message.equals("#getport")) {
+        this.handled(5);
+      } else if (message.startsWith("#latency")) {
+        this.handled(message.length());
+      } else if (message.startsWith("#whisper ") || message.startsWith("#join ")
+          || message.equals("#leave") || message.equals("#channel")) {
+        this.handled(message.length());
+      } else {
+        this.handled(0);
+      }
+    } else {
+      this.handled(message.length());
+    }
+  }
+}
+//End of CommandParsingBenchmark class
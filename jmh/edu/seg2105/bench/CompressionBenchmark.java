@@ -0,0 +1,124 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ocsf.common.*;
+
+/**
+ * Measures the cost of compressing chat messages against the bytes it
+ * saves.  Each operation encodes an envelope into a frame, encodes and
+ * compresses it, or decodes the compressed frame, in memory, so the CPU
+ * time per operation is the cost of compression alone.  The sizes of the
+ * frame before and after compression are printed once the benchmark is set
+ * up, and show in the output of each fork.
+ * <p>
+ * A broadcast compresses its frame once for all the clients, so its cost
+ * is that of one operation whatever the number of clients, while the bytes
+ * are saved for each of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark
+{
+  //Class variables *************************************************
+
+  private static final String CHAT =
+    "does anyone know how to fix this error? it was working yesterday lol";
+
+  private static final String PASTE =
+    "Exception in thread \"main\" java.lang.NullPointerException: Cannot invoke "
+    + "\"String.length()\" because \"line\" is null\n"
+    + "\tat edu.seg2105.client.ui.ClientConsole.accept(ClientConsole.java:112)\n"
+    + "\tat edu.seg2105.client.ui.ClientConsole.main(ClientConsole.java:178)\n"
+    + "I ran it again after a clean build and got the same thing. Here is the "
+    + "method, I don't see what is wrong with it:\n"
+    + "  public void accept()\n  {\n    try {\n      String message;\n"
+    + "      while (true) {\n        message = fromConsole.nextLine();\n"
+    + "        client.handleMessageFromClientUI(message);\n      }\n"
+    + "    } catch (Exception ex) {\n"
+    + "      System.out.println(\"Unexpected error while reading from console!\");\n"
+    + "    }\n  }\n"
+    + "Could you please have a look when you have time? Thanks for the help.";
+
+  //Instance variables **********************************************
+
+  /**
+   * "chat" for a short chat line, "paste" for a pasted stack trace and
+   * code, "history" for fifty chat lines replayed in one message.
+   */
+  @Param({"chat", "paste", "history"})
+  public String payload;
+
+  /**
+   * "none" to encode only, "deflate" to encode and compress, "inflate" to
+   * decode a compressed frame.
+   */
+  @Param({"none", "deflate", "inflate"})
+  public String mode;
+
+  private final Codec codec = new EnvelopeCodec();
+
+  private final FrameCompressor compressor = new FrameCompressor(1);
+
+  private Envelope message;
+
+  private ByteBuffer compressed;
+
+  private int compressedHeader;
+
+  //Instance methods ************************************************
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    String text;
+    if (this.payload.equals("chat")) {
+      text = CHAT;
+    } else if (this.payload.equals("paste")) {
+      text = PASTE;
+    } else {
+      StringBuilder history = new StringBuilder();
+      String[] senders = {"alice", "bob", "carol"};
+      for (int i = 0; i < 50; i++) {
+        history.append("[general] ").append(senders[i % senders.length]).append(" - ")
+          .append(i % 4 == 0 ? CHAT : "sounds good to me, I think we should talk about it later today")
+          .append(" (").append(i).append(")\n");
+      }
+      text = history.toString();
+    }
+    this.message = new Envelope(Envelope.Type.CHAT, "alice", "general", 1, text);
+
+    ByteBuffer frame = Frames.encode(this.message, this.codec);
+    this.compressed = this.compressor.compress(frame);
+    this.compressedHeader = this.compressed.getInt(0);
+    System.out.println("frameBytes=" + frame.remaining() + " wireBytes=" + this.compressed.remaining());
+  }
+
+  @Benchmark
+  public Object compression() throws Exception
+  {
+    if (this.mode.equals("inflate")) {
+      ByteBuffer payload = this.compressed.duplicate();
+      payload.position(Frames.HEADER_LENGTH);
+      return Frames.decode(this.compressedHeader, payload, this.codec, this.compressor);
+    }
+
+    ByteBuffer frame = Frames.encode(this.message, this.codec);
+    if (this.mode.equals("deflate")) {
+      frame = this.compressor.compress(frame);
+    }
+    return frame;
+  }
+}
+//End of CompressionBenchmark class
@@ -0,0 +1,325 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.seg2105.client.common.ChatIF;
+import edu.seg2105.edu.server.backend.EchoServer;
+import ocsf.common.AsyncLogger;
+import ocsf.common.LatencyHistogram;
+import ocsf.common.ThreadMode;
+import ocsf.common.TracedMessage;
+
+/**
+ * Drives many simulated chat users against an <code> EchoServer </code>, to
+ * find how many it can serve and to watch it under load for a long time.
+ * The users connect at a given rate, send chat lines at a given rate, and
+ * may log off and back in under a new login Id from time to time.  At the
+ * end, the generator reports the throughput, the latency of the chat lines,
+ * the failures, and the resources used by the server.
+ * <p>
+ * The settings are read from system properties, with these defaults:
+ * <ul>
+ * <li> <code> load.users=100 </code>: the number of simulated users.
+ * <li> <code> load.connectRate=100 </code>: connections per second.
+ * <li> <code> load.messageRate=1 </code>: chat lines per second per user.
+ * <li> <code> load.size=64 </code>: characters per chat line.
+ * <li> <code> load.session=0 </code>: the mean time, in seconds, before a
+ *  user logs off and back in, or 0 for no churn.
+ * <li> <code> load.channelSize=0 </code>: users per channel, or 0 for all
+ *  the users in the default channel.
+ * <li> <code> load.duration=30 </code>: the length of the test in seconds,
+ *  ramp-up included.
+ * <li> <code> load.host=localhost </code> and <code> load.port=5555 </code>:
+ *  the server.  Unless <code> load.server=false </code>, an
+ *  <code> EchoServer </code> is started in this JVM on that port.
+ * <li> <code> load.threads=4 </code>: the threads that send and churn.
+ * <li> <code> load.compression=0 </code>: the smallest message compressed,
+ *  in bytes, by the users and the server started, or 0 for none.
+ * </ul>
+ */
+public class LoadGenerator
+{
+  //Instance variables **********************************************
+
+  private final int users = Integer.getInteger("load.users", 100);
+
+  private final double connectRate = Double.parseDouble(System.getProperty("load.connectRate", "100"));
+
+  private final double messageRate = Double.parseDouble(System.getProperty("load.messageRate", "1"));
+
+  private final int size = Integer.getInteger("load.size", 64);
+
+  private final double sessionSeconds = Double.parseDouble(System.getProperty("load.session", "0"));
+
+  private final int channelSize = Integer.getInteger("load.channelSize", 0);
+
+  private final long durationSeconds = Long.getLong("load.duration", 30);
+
+  private final String host = System.getProperty("load.host", "localhost");
+
+  private final int port = Integer.getInteger("load.port", EchoServer.DEFAULT_PORT);
+
+  private final boolean startServer = Boolean.parseBoolean(System.getProperty("load.server", "true"));
+
+  private final int threads = Integer.getInteger("load.threads", 4);
+
+  private final int compressionThreshold = Integer.getInteger("load.compression", 0);
+
+  /**
+   * The server started by the generator, if any.
+   */
+  private EchoServer server;
+
+  /**
+   * The simulated users created so far.
+   */
+  private final List<SimulatedUser> simulatedUsers = new ArrayList<SimulatedUser>();
+
+  /**
+   * The number of login Ids handed out, to make new ones.
+   */
+  private final AtomicInteger logins = new AtomicInteger();
+
+  // Statistics, updated by the simulated users
+  private final LongAdder messagesSent = new LongAdder();
+  private final LongAdder messagesReceived = new LongAdder();
+  private final LongAdder loginCount = new LongAdder();
+  private final LongAdder connectionFailures = new LongAdder();
+  private final LongAdder connectionsLost = new LongAdder();
+  private final LongAdder sendFailures = new LongAdder();
+
+  /**
+   * The time from a user sending a chat line to receiving it back.
+   */
+  private final LatencyHistogram roundTripLatency = new LatencyHistogram();
+
+  /**
+   * The time from the server relaying a chat line to a user receiving it.
+   */
+  private final LatencyHistogram fanOutLatency = new LatencyHistogram();
+
+  //Instance methods ************************************************
+
+  /**
+   * Runs the test and prints its report.
+   */
+  public void run() throws Exception
+  {
+    if (this.startServer) {
+      this.server = new EchoServer(this.port);
+      this.server.setBacklog(Math.max(128, this.users));
+      this.server.setCompressionThreshold(this.compressionThreshold);
+      this.server.listen();
+    }
+
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(this.threads, runnable -> {
+      Thread thread = new Thread(runnable, "load-generator");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.setRemoveOnCancelPolicy(true);
+
+    ChatIF sink = message -> {};
+    char[] line = new char[this.size];
+    for (int i = 0; i < line.length; i++) {
+      line[i] = (char) ('a' + i % 26);
+    }
+    String chatLine = new String(line);
+
+    long start = System.nanoTime();
+    long cpuStart = processCpuTime();
+    long connectPeriod = (long) (1e9 / this.connectRate);
+    long end = start + this.durationSeconds * 1000000000L;
+    for (int i = 0; i < this.users && System.nanoTime() - end < 0; i++) {
+      LockSupport.parkNanos(start + i * connectPeriod - System.nanoTime());
+      String channel = this.channelSize > 0 ? "room" + i / this.channelSize : null;
+      SimulatedUser user = new SimulatedUser(this, sink, this.nextLoginId(), channel, chatLine);
+      user.setThreadMode(ThreadMode.VIRTUAL.isSupported() ? ThreadMode.VIRTUAL : ThreadMode.PLATFORM);
+      this.simulatedUsers.add(user);
+      user.connect();
+      this.startSession(scheduler, user);
+    }
+
+    long period = Math.max(1, (long) (1e9 / this.messageRate));
+    for (SimulatedUser user : this.simulatedUsers) {
+      // Spread the sends of the users over the period
+      scheduler.scheduleAtFixedRate(user::send, ThreadLocalRandom.current().nextLong(period), period,
+        TimeUnit.NANOSECONDS);
+    }
+    long rampUp = System.nanoTime() - start;
+    long measureStart = System.nanoTime();
+    long sentBefore = this.messagesSent.sum();
+    long receivedBefore = this.messagesReceived.sum();
+    this.roundTripLatency.reset();
+    this.fanOutLatency.reset();
+
+    Thread.sleep(Math.max(0, (end - System.nanoTime()) / 1000000));
+    scheduler.shutdownNow();
+    scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    long measured = System.nanoTime() - measureStart;
+    long cpu = processCpuTime() - cpuStart;
+
+    this.report(rampUp, measured, this.messagesSent.sum() - sentBefore,
+      this.messagesReceived.sum() - receivedBefore, cpu);
+
+    for (SimulatedUser user : this.simulatedUsers) {
+      user.disconnect();
+    }
+    if (this.server != null) {
+      this.server.close();
+    }
+  }
+
+  /**
+   * Schedules the end of the session of a user, if there is churn.  The
+   * sessions last a random time, exponentially distributed around the mean
+   * session time.
+   */
+  private void startSession(ScheduledExecutorService scheduler, SimulatedUser user)
+  {
+    if (this.sessionSeconds <= 0) {
+      return;
+    }
+    double seconds = -this.sessionSeconds * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+    try {
+      scheduler.schedule(() -> {
+        user.relogin(this.nextLoginId());
+        this.startSession(scheduler, user);
+      }, (long) (seconds * 1e9), TimeUnit.NANOSECONDS);
+    } catch (RejectedExecutionException e) {
+      // The test is over
+    }
+  }
+
+  private String nextLoginId()
+  {
+    return "user" + this.logins.incrementAndGet();
+  }
+
+  /**
+   * Prints the report of the test.
+   */
+  private void report(long rampUp, long measured, long sent, long received, long cpu)
+  {
+    double seconds = measured / 1e9;
+    System.out.println("Load test: " + this.users + " users, " + this.messageRate + " lines/s each of "
+      + this.size + " characters, " + (this.channelSize > 0 ? this.channelSize + " per channel" : "one channel")
+      + (this.sessionSeconds > 0 ? ", sessions of " + this.sessionSeconds + " s" : ""));
+    System.out.println(String.format("Ramp-up: %.1f s, measured: %.1f s", rampUp / 1e9, seconds));
+    System.out.println("Logins: " + this.loginCount.sum() + ", connection failures: "
+      + this.connectionFailures.sum() + ", connections lost: " + this.connectionsLost.sum()
+      + ", send failures: " + this.sendFailures.sum());
+    System.out.println(String.format("Throughput: %.0f lines/s sent, %.0f lines/s received", sent / seconds,
+      received / seconds));
+    System.out.println(formatLatency("Round trip", this.roundTripLatency));
+    System.out.println(formatLatency("Server to receiver", this.fanOutLatency));
+
+    Runtime runtime = Runtime.getRuntime();
+    System.out.println(String.format("Process: CPU %.1f s, heap %d MB used of %d MB, %d threads", cpu / 1e9,
+      (runtime.totalMemory() - runtime.freeMemory()) >> 20, runtime.maxMemory() >> 20,
+      ManagementFactory.getThreadMXBean().getThreadCount()));
+    if (this.server != null) {
+      System.out.println(this.server.getMetrics().report());
+    }
+  }
+
+  String getHost()
+  {
+    return this.host;
+  }
+
+  int getPort()
+  {
+    return this.port;
+  }
+
+  int getCompressionThreshold()
+  {
+    return this.compressionThreshold;
+  }
+
+  // Statistics, called by the simulated users
+
+  void loggedIn()
+  {
+    this.loginCount.increment();
+  }
+
+  void connectionFailed()
+  {
+    this.connectionFailures.increment();
+  }
+
+  void connectionLost()
+  {
+    this.connectionsLost.increment();
+  }
+
+  void sendFailed()
+  {
+    this.sendFailures.increment();
+  }
+
+  void messageSent()
+  {
+    this.messagesSent.increment();
+  }
+
+  void messageReceived(TracedMessage msg, boolean own)
+  {
+    long now = TracedMessage.now();
+    this.messagesReceived.increment();
+    if (msg.getServerSentTime() != 0) {
+      this.fanOutLatency.record((now - msg.getServerSentTime()) * 1000);
+    }
+    if (own) {
+      this.roundTripLatency.record((now - msg.getSentTime()) * 1000);
+    }
+  }
+
+  //Class methods ***************************************************
+
+  /**
+   * @return the CPU time used by the process so far, in nanoseconds, or -1
+   *  if the platform does not tell.
+   */
+  private static long processCpuTime()
+  {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+    }
+    return -1;
+  }
+
+  private static String formatLatency(String name, LatencyHistogram latency)
+  {
+    return String.format("%s (us): %d lines, p50 %d, p99 %d, p99.9 %d, max %d", name, latency.getCount(),
+      latency.getPercentile(50) / 1000, latency.getPercentile(99) / 1000, latency.getPercentile(99.9) / 1000,
+      latency.getMax() / 1000);
+  }
+
+  /**
+   * Runs a load test with the settings of the system properties.
+   */
+  public static void main(String[] args) throws Exception
+  {
+    if (System.getProperty("ocsf.log.level") == null) {
+      AsyncLogger.setLevel(AsyncLogger.Level.WARN);
+    }
+    new LoadGenerator().run();
+    System.exit(0);
+  }
+}
+//End of LoadGenerator class
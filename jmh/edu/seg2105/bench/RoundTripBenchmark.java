@@ -0,0 +1,85 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.bench;
+
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ocsf.client.AbstractClient;
+import ocsf.common.Codec;
+import ocsf.server.AbstractServer;
+
+/**
+ * Measures the round trip of a message from an <code> AbstractClient </code>
+ * to a server that sends it back, over loopback, one message at a time.
+ * Each round trip is sampled, so the report has its percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Docsf.log.level=OFF")
+public class RoundTripBenchmark
+{
+  //Instance variables **********************************************
+
+  /**
+   * "object" for object streams, "utf8" for UTF-8 frames, both in blocking
+   * mode, or "nio" for serialization frames on event loops.
+   */
+  @Param({"object", "utf8", "nio"})
+  public String mode;
+
+  private final SynchronousQueue<Object> replies = new SynchronousQueue<Object>();
+
+  private AbstractServer server;
+
+  private AbstractClient client;
+
+  //Instance methods ************************************************
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    int port = Servers.port();
+    Codec codec = SendBenchmark.codecFor(this.mode.equals("nio") ? "serialization" : this.mode);
+    this.server = Servers.newServer(port, this.mode.equals("nio") ? 1 : 0, codec);
+    this.server.listen();
+    this.client = new AbstractClient("localhost", port) {
+      @Override
+      protected void handleMessageFromServer(Object msg) {
+        try {
+          replies.put(msg);
+        } catch (InterruptedException e) {}
+      }
+    };
+    this.client.setCodec(codec);
+    this.client.openConnection();
+  }
+
+  @Benchmark
+  public Object roundTrip() throws Exception
+  {
+    this.client.sendToServer("ping");
+    Object reply = this.replies.poll(10, TimeUnit.SECONDS);
+    if (reply == null) {
+      throw new IllegalStateException("no reply within 10 seconds");
+    }
+    return reply;
+  }
+
+  @TearDown
+  public void tearDown() throws Exception
+  {
+    if (this.client != null) {
+      this.client.closeConnection();
+    }
+    Servers.close(this.server);
+  }
+}
+//End of RoundTripBenchmark class
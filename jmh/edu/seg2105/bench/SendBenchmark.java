@@ -0,0 +1,110 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ocsf.common.*;
+import ocsf.server.*;
+
+/**
+ * Measures <code> ConnectionToClient.sendToClient </code> for one client over
+ * loopback, by message size and encoding: the cost of encoding a message
+ * and writing it to the socket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Docsf.log.level=OFF")
+public class SendBenchmark
+{
+  //Class variables *************************************************
+
+  /**
+   * The number of distinct messages sent in turn.  More than the reset
+   * budget of an object stream, so that no message is sent as a mere
+   * back-reference to an earlier one.
+   */
+  private static final int DISTINCT_MESSAGES = 2048;
+
+  //Instance variables **********************************************
+
+  /**
+   * The length of the messages, in characters.
+   */
+  @Param({"16", "1024"})
+  public int size;
+
+  /**
+   * "object" for object streams, "serialization" or "utf8" for frames of
+   * that codec.
+   */
+  @Param({"object", "serialization", "utf8"})
+  public String encoding;
+
+  private final String[] messages = new String[DISTINCT_MESSAGES];
+
+  private AbstractServer server;
+
+  private Sink sink;
+
+  private ConnectionToClient client;
+
+  private int next = 0;
+
+  //Instance methods ************************************************
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    for (int i = 0; i < DISTINCT_MESSAGES; i++) {
+      StringBuilder message = new StringBuilder(this.size).append(i).append(':');
+      while (message.length() < this.size) {
+        message.append((char) ('a' + message.length() % 26));
+      }
+      this.messages[i] = message.substring(0, this.size);
+    }
+
+    int port = Servers.port();
+    this.server = Servers.newServer(port, 0, codecFor(this.encoding));
+    this.server.listen();
+    this.sink = new Sink(port, 1, this.encoding.equals("object"));
+    this.client = Servers.awaitClients(this.server, 1)[0];
+  }
+
+  @Benchmark
+  public void sendToClient() throws Exception
+  {
+    this.client.sendToClient(this.messages[this.next++ & (DISTINCT_MESSAGES - 1)]);
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    Servers.close(this.server, this.sink);
+  }
+
+  //Class methods ***************************************************
+
+  /**
+   * @return the codec for an encoding name, null for object streams.
+   */
+  static Codec codecFor(String encoding)
+  {
+    switch (encoding) {
+      case "serialization":
+        return new SerializationCodec();
+      case "utf8":
+        return new Utf8Codec();
+      default:
+        return null;
+    }
+  }
+}
+//End of SendBenchmark class
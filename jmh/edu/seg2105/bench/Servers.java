@@ -0,0 +1,129 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.bench;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ocsf.common.Codec;
+import ocsf.server.*;
+
+/**
+ * Helpers to set up the servers of the benchmarks.
+ */
+final class Servers
+{
+  //Constructors ****************************************************
+
+  private Servers() {}
+
+  //Class methods ***************************************************
+
+  /**
+   * @return the port the servers of the benchmarks listen on, given by the
+   *  system property <code> bench.port </code>.  Each fork runs one set of
+   *  parameters at a time, so the same port serves them all.
+   */
+  static int port()
+  {
+    return Integer.getInteger("bench.port", 5600);
+  }
+
+  /**
+   * Creates a server that sends every message back to its sender.
+   *
+   * @param port The port to listen on.
+   * @param eventLoops The number of event loops, zero for blocking mode.
+   * @param codec The codec of the frames, or null for object streams.
+   * @return the server, not yet listening.
+   */
+  static AbstractServer newServer(int port, int eventLoops, Codec codec)
+  {
+    AbstractServer server = new EchoingServer(port);
+    server.setEventLoopThreads(eventLoops);
+    server.setCodec(codec);
+    return server;
+  }
+
+  /**
+   * Waits until a server has a number of clients.  For the servers created
+   * here, waits until their streams are open as well, since a blocking
+   * connection cannot be sent to before.
+   *
+   * @return the connections of the server.
+   * @exception IOException if they do not all connect within 60 seconds.
+   */
+  static ConnectionToClient[] awaitClients(AbstractServer server, int clients)
+    throws IOException, InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + 60000;
+    while (connectedClients(server) < clients) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new IOException("only " + connectedClients(server) + " of " + clients + " clients connected");
+      }
+      Thread.sleep(10);
+    }
+    return server.getClientConnections();
+  }
+
+  private static int connectedClients(AbstractServer server)
+  {
+    if (server instanceof EchoingServer) {
+      return ((EchoingServer) server).connected.get();
+    }
+    return server.getNumberOfClients();
+  }
+
+  /**
+   * Closes a server and the resources connected to it, ignoring the
+   * missing ones.
+   */
+  static void close(AbstractServer server, Closeable... resources)
+  {
+    for (Closeable resource : resources) {
+      try {
+        if (resource != null) {
+          resource.close();
+        }
+      } catch (IOException e) {}
+    }
+    try {
+      if (server != null) {
+        server.close();
+      }
+    } catch (IOException e) {}
+  }
+
+  //Inner classes ***************************************************
+
+  /**
+   * A server that sends every message back to its sender, and counts the
+   * clients whose connection is established.
+   */
+  private static class EchoingServer extends AbstractServer
+  {
+    final AtomicInteger connected = new AtomicInteger();
+
+    EchoingServer(int port)
+    {
+      super(port);
+    }
+
+    @Override
+    protected void clientConnected(ConnectionToClient client)
+    {
+      this.connected.incrementAndGet();
+    }
+
+    @Override
+    protected void handleMessageFromClient(Object msg, ConnectionToClient client)
+    {
+      try {
+        client.sendToClient(msg);
+      } catch (IOException e) {}
+    }
+  }
+}
+//End of Servers class
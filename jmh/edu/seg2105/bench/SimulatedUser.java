@@ -0,0 +1,204 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.bench;
+
+import java.io.IOException;
+
+import edu.seg2105.client.common.ChatIF;
+import ocsf.client.AbstractClient;
+import ocsf.common.Envelope;
+import ocsf.common.EnvelopeCodec;
+import ocsf.common.TracedMessage;
+
+/**
+ * A chat user simulated by the load generator.  Like a
+ * <code> ChatClient </code>, it logs in when its connection is established
+ * and sends chat lines, but as traced messages, so that the generator can
+ * measure their latency.  Its failures are counted rather than ending the
+ * program, and what is not a traced message goes to a <code> ChatIF </code>.
+ */
+class SimulatedUser extends AbstractClient
+{
+  //Instance variables **********************************************
+
+  /**
+   * The generator that keeps the statistics.
+   */
+  private final LoadGenerator generator;
+
+  /**
+   * Where the messages that are not chat lines go.
+   */
+  private final ChatIF clientUI;
+
+  /**
+   * The line this user sends.
+   */
+  private final String line;
+
+  /**
+   * The channel this user joins after logging in, null for the default one.
+   */
+  private final String channel;
+
+  /**
+   * The login Id of the current session.
+   */
+  private volatile String loginId;
+
+  /**
+   * The sequence number of the last traced message sent.
+   */
+  private long sequence = 0;
+
+  /**
+   * True while this user is closing its connection itself.
+   */
+  private volatile boolean closing = false;
+
+  /**
+   * True once the current session has logged in.
+   */
+  private volatile boolean loggedIn = false;
+
+  //Constructors ****************************************************
+
+  /**
+   * @param generator The generator that keeps the statistics.
+   * @param clientUI Where the messages that are not chat lines go.
+   * @param loginId The login Id of the first session.
+   * @param channel The channel to join, null for the default one.
+   * @param line The line to send.
+   */
+  SimulatedUser(LoadGenerator generator, ChatIF clientUI, String loginId, String channel, String line)
+  {
+    super(generator.getHost(), generator.getPort());
+    this.generator = generator;
+    this.clientUI = clientUI;
+    this.loginId = loginId;
+    this.channel = channel;
+    this.line = line;
+    this.setCodec(new EnvelopeCodec());
+    this.setCompressionThreshold(generator.getCompressionThreshold());
+  }
+
+  //Instance methods ************************************************
+
+  /**
+   * Connects and logs in.
+   *
+   * @return true if the connection was established.
+   */
+  boolean connect()
+  {
+    try {
+      this.closing = false;
+      this.openConnection();
+      return true;
+    } catch (IOException e) {
+      this.generator.connectionFailed();
+      return false;
+    }
+  }
+
+  /**
+   * Ends the current session, if any, and starts another one under a new
+   * login Id.
+   *
+   * @return true if the new connection was established.
+   */
+  boolean relogin(String newLoginId)
+  {
+    this.disconnect();
+    try {
+      // The reader thread of the old connection must end first
+      for (int i = 0; i < 1000 && this.isConnected(); i++) {
+        Thread.sleep(1);
+      }
+    } catch (InterruptedException e) {
+      return false;
+    }
+    this.loginId = newLoginId;
+    return this.connect();
+  }
+
+  /**
+   * Closes the connection without counting it as a failure.
+   */
+  void disconnect()
+  {
+    this.closing = true;
+    this.loggedIn = false;
+    try {
+      this.closeConnection();
+    } catch (IOException e) {}
+  }
+
+  /**
+   * Sends one chat line, if logged in.
+   */
+  synchronized void send()
+  {
+    if (!this.loggedIn) {
+      return;
+    }
+    try {
+      Envelope chat = new Envelope(Envelope.Type.CHAT, this.loginId, null, ++this.sequence, this.line);
+      this.sendToServer(new TracedMessage(this.loginId, this.sequence, chat));
+      this.generator.messageSent();
+    } catch (IOException e) {
+      if (!this.closing) {
+        this.generator.sendFailed();
+      }
+    }
+  }
+
+  /**
+   * Records the latency of the chat lines and hands anything else to the UI.
+   *
+   * @param msg The message from the server.
+   */
+  @Override
+  protected void handleMessageFromServer(Object msg)
+  {
+    if (msg instanceof TracedMessage) {
+      TracedMessage traced = (TracedMessage) msg;
+      this.generator.messageReceived(traced, this.loginId.equals(traced.getOrigin()));
+    } else {
+      this.clientUI.display(msg.toString());
+    }
+  }
+
+  /**
+   * Logs in, and joins the channel if there is one.
+   */
+  @Override
+  protected synchronized void connectionEstablished()
+  {
+    try {
+      this.sendToServer(new Envelope(Envelope.Type.LOGIN, this.loginId, null, 0, null));
+      if (this.channel != null) {
+        this.sendToServer(new Envelope(Envelope.Type.COMMAND, "#join " + this.channel));
+      }
+      this.loggedIn = true;
+      this.generator.loggedIn();
+    } catch (IOException e) {
+      this.generator.connectionFailed();
+    }
+  }
+
+  /**
+   * Counts a connection lost other than by this user closing it.
+   */
+  @Override
+  protected void connectionException(Exception exception)
+  {
+    this.loggedIn = false;
+    if (!this.closing) {
+      this.generator.connectionLost();
+    }
+  }
+}
+//End of SimulatedUser class
@@ -0,0 +1,121 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package edu.seg2105.bench;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Many connections to a server that read and discard everything it sends,
+ * all on one thread, so that benchmarks can have thousands of receivers
+ * without a thread or a client object each.
+ */
+class Sink implements Closeable
+{
+  //Instance variables **********************************************
+
+  private final Selector selector;
+
+  private final List<SocketChannel> channels = new ArrayList<SocketChannel>();
+
+  private final Thread reader;
+
+  private volatile boolean running = true;
+
+  /**
+   * The number of bytes received on all the connections.
+   */
+  private volatile long bytesReceived = 0;
+
+  //Constructors ****************************************************
+
+  /**
+   * Opens the connections and starts reading.
+   *
+   * @param port The port of the server, on this host.
+   * @param connections The number of connections.
+   * @param objectStreams True to send the header of an object stream on
+   *  each connection, as a blocking server without a codec waits for it.
+   */
+  Sink(int port, int connections, boolean objectStreams) throws IOException
+  {
+    this.selector = Selector.open();
+    try {
+      for (int i = 0; i < connections; i++) {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", port));
+        this.channels.add(channel);
+        if (objectStreams) {
+          ObjectOutputStream header = new ObjectOutputStream(channel.socket().getOutputStream());
+          header.flush();
+        }
+        channel.configureBlocking(false);
+        channel.register(this.selector, SelectionKey.OP_READ);
+      }
+    } catch (IOException e) {
+      this.close();
+      throw e;
+    }
+
+    this.reader = new Thread(this::readAll, "bench-sink");
+    this.reader.setDaemon(true);
+    this.reader.start();
+  }
+
+  //Instance methods ************************************************
+
+  /**
+   * @return the number of bytes received so far.
+   */
+  long getBytesReceived()
+  {
+    return this.bytesReceived;
+  }
+
+  /**
+   * Closes every connection and stops reading.
+   */
+  public void close() throws IOException
+  {
+    this.running = false;
+    this.selector.wakeup();
+    for (SocketChannel channel : this.channels) {
+      channel.close();
+    }
+    this.selector.close();
+  }
+
+  private void readAll()
+  {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    long received = 0;
+    try {
+      while (this.running) {
+        this.selector.select();
+        for (SelectionKey key : this.selector.selectedKeys()) {
+          int read;
+          do {
+            buffer.clear();
+            read = ((SocketChannel) key.channel()).read(buffer);
+            if (read > 0) {
+              received += read;
+            }
+          } while (read == buffer.capacity());
+          if (read < 0) {
+            key.cancel();
+          }
+        }
+        this.selector.selectedKeys().clear();
+        this.bytesReceived = received;
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      // Closed
+    }
+  }
+}
+//End of Sink class
@@ -5,6 +5,13 @@ package ocsf.client;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+
+import ocsf.common.Codec;
+import ocsf.common.FrameCompressor;
+import ocsf.common.Frames;
+import ocsf.common.ManagedObjectOutputStream;
+import ocsf.common.ThreadMode;
 
 /**
  * The <code> AbstractClient </code> contains all the methods necessary to set
@@ -18,6 +25,13 @@ import java.net.*;
  * Several public service methods are provided to application that use this
  * framework.
  * <p>
+ * Messages travel on a continuous object stream unless a <code> Codec </code>
+ * is selected with <code> setCodec </code>; they are then exchanged as
+ * length-prefixed frames. The codec must be the one used by the server, and
+ * a server in non-blocking mode always uses frames. With frames, large
+ * messages can be compressed if the server agrees; see
+ * <code> setCompressionThreshold </code>.
+ * <p>
  * Project Name: OCSF (Object Client-Server Framework)
  * <p>
  * 
@@ -25,7 +39,7 @@ import java.net.*;
  * @author Dr. Timothy C. Lethbridge
  * @author Fran&ccedil;ois B&eacutel;langer
  * @author Paul Holden
- * @version September 2022 (2.13)
+ * @version September 2025 (2.15)
  */
 public abstract class AbstractClient implements Runnable {
 
@@ -40,15 +54,92 @@ public abstract class AbstractClient implements Runnable {
 	private Socket clientSocket;
 
 	/**
-	 * The stream to handle data going to the server.
+	 * The stream to handle data going to the server. Reset on a budget of
+	 * messages and bytes.
 	 */
-	private ObjectOutputStream output;
+	private ManagedObjectOutputStream output;
 
 	/**
 	 * The stream to handle data from the server.
 	 */
 	private ObjectInputStream input;
 
+	/**
+	 * The stream to handle frames going to the server when a codec is used.
+	 */
+	private DataOutputStream frameOutput;
+
+	/**
+	 * The stream to handle frames from the server when a codec is used.
+	 */
+	private DataInputStream frameInput;
+
+	/**
+	 * The codec of the frames, or null to use object streams.
+	 */
+	private Codec codec = null;
+
+	/**
+	 * The codec of the open connection.
+	 */
+	private Codec wireCodec = null;
+
+	/**
+	 * The smallest payload compressed, or zero if compression is disabled.
+	 */
+	private int compressionThreshold = 0;
+
+	/**
+	 * The compressor of the open connection, or null.
+	 */
+	private FrameCompressor compressor = null;
+
+	/**
+	 * Indicates if the server agreed to receive compressed frames on the
+	 * open connection.
+	 */
+	private volatile boolean serverInflates = false;
+
+	/**
+	 * The number of messages after which the object stream is reset.
+	 */
+	private int resetMessages = ManagedObjectOutputStream.DEFAULT_RESET_MESSAGES;
+
+	/**
+	 * The number of bytes after which the object stream is reset.
+	 */
+	private long resetBytes = ManagedObjectOutputStream.DEFAULT_RESET_BYTES;
+
+	/**
+	 * Whether Nagle's algorithm is disabled on the socket.
+	 */
+	private boolean tcpNoDelay = true;
+
+	/**
+	 * The socket send buffer size, zero for the system default.
+	 */
+	private int sendBufferSize = 0;
+
+	/**
+	 * The socket receive buffer size, zero for the system default.
+	 */
+	private int receiveBufferSize = 0;
+
+	/**
+	 * The size of the buffer in front of the output stream.
+	 */
+	private int outputBufferSize = 8192;
+
+	/**
+	 * Indicates if every message is flushed as soon as it is sent.
+	 */
+	private boolean autoFlush = true;
+
+	/**
+	 * The kind of thread created to read data from the server.
+	 */
+	private ThreadMode threadMode = ThreadMode.PLATFORM;
+
 	/**
 	 * The thread created to read data from the server.
 	 */
@@ -102,9 +193,32 @@ public abstract class AbstractClient implements Runnable {
 
 		// Create the sockets and the data streams
 		try {
-			clientSocket = new Socket(host, port);
-			output = new ObjectOutputStream(clientSocket.getOutputStream());
-			input = new ObjectInputStream(clientSocket.getInputStream());
+			clientSocket = new Socket();
+			clientSocket.setTcpNoDelay(tcpNoDelay);
+			if (sendBufferSize > 0)
+				clientSocket.setSendBufferSize(sendBufferSize);
+			if (receiveBufferSize > 0)
+				clientSocket.setReceiveBufferSize(receiveBufferSize);
+			clientSocket.connect(new InetSocketAddress(host, port));
+
+			OutputStream buffered = new BufferedOutputStream(clientSocket.getOutputStream(), outputBufferSize);
+			wireCodec = codec;
+			if (wireCodec != null) {
+				frameOutput = new DataOutputStream(buffered);
+				frameInput = new DataInputStream(clientSocket.getInputStream());
+
+				// Offer compression; the server answers if it agrees
+				compressor = compressionThreshold == 0 ? null : new FrameCompressor(compressionThreshold);
+				serverInflates = false;
+				if (compressor != null) {
+					Frames.write(Frames.control(Frames.Control.DEFLATE), frameOutput);
+					frameOutput.flush();
+				}
+			} else {
+				output = new ManagedObjectOutputStream(buffered, resetMessages, resetBytes);
+				output.flush(); // Send the stream header
+				input = new ObjectInputStream(clientSocket.getInputStream());
+			}
 		} catch (IOException ex)
 		// All three of the above must be closed when there is a failure
 		// to create any of them
@@ -117,14 +231,15 @@ public abstract class AbstractClient implements Runnable {
 			throw ex; // Rethrow the exception.
 		}
 
-		clientReader = new Thread(this); // Create the data reader thread
+		clientReader = threadMode.newFactory("ocsf-client-reader-").newThread(this); // Create the data reader thread
 		readyToStop = false;
 		clientReader.start(); // Start the thread
 	}
 
 	/**
 	 * Sends an object to the server. This is the only way that methods should
-	 * communicate with the server.
+	 * communicate with the server. Unless automatic flushing is disabled, the
+	 * message is flushed to the socket before this call returns.
 	 * 
 	 * @param msg
 	 *            The message to be sent.
@@ -132,10 +247,32 @@ public abstract class AbstractClient implements Runnable {
 	 *                if an I/O error occurs when sending
 	 */
 	final public void sendToServer(Object msg) throws IOException {
-		if (clientSocket == null || output == null)
+		if (clientSocket == null || (output == null && frameOutput == null))
 			throw new SocketException("socket does not exist");
 
-		output.writeObject(msg);
+		if (frameOutput != null) {
+			ByteBuffer frame = Frames.encode(msg, wireCodec);
+			Frames.write(serverInflates ? compressor.compress(frame) : frame, frameOutput);
+		} else {
+			output.writeMessage(msg);
+		}
+
+		if (autoFlush)
+			flush();
+	}
+
+	/**
+	 * Flushes the messages sent but still buffered. Only needed when
+	 * automatic flushing is disabled.
+	 * 
+	 * @exception IOException
+	 *                if an I/O error occurs when flushing.
+	 */
+	final public void flush() throws IOException {
+		if (frameOutput != null)
+			frameOutput.flush();
+		else if (output != null)
+			output.flush();
 	}
 
 
@@ -184,6 +321,140 @@ public abstract class AbstractClient implements Runnable {
 		this.port = port;
 	}
 
+	/**
+	 * Selects the codec of the frames exchanged with the server. Null, the
+	 * default, selects a continuous object stream. The change only takes
+	 * effect at the time of the next call to openConnection().
+	 * 
+	 * @param codec
+	 *            the codec, the same as the server's.
+	 */
+	final public void setCodec(Codec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * Enables compression from the next call to openConnection(), for frames
+	 * whose payload has at least the given number of bytes. The client
+	 * offers compression when it connects; the server then compresses the
+	 * frames it sends, and the client its own once the server agrees. Both
+	 * must be of this version of the framework or later. Compression needs a
+	 * codec. Zero, the default, disables it.
+	 *
+	 * @param threshold
+	 *            the smallest payload compressed, in bytes, or zero.
+	 */
+	final public void setCompressionThreshold(int threshold) {
+		if (threshold < 0)
+			throw new IllegalArgumentException("negative compression threshold");
+		this.compressionThreshold = threshold;
+	}
+
+	/**
+	 * @return the smallest payload compressed, or zero if compression is
+	 *         disabled.
+	 */
+	final public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * @return the codec, or null if object streams are used.
+	 */
+	final public Codec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Sets how often the object stream is reset, so that neither end retains
+	 * every message sent. The stream is reset after the given number of
+	 * messages or bytes, whichever comes first; zero removes that limit. Not
+	 * used with a codec. The change only takes effect at the time of the next
+	 * call to openConnection().
+	 * 
+	 * @param resetMessages
+	 *            the number of messages between two resets.
+	 * @param resetBytes
+	 *            the number of bytes between two resets.
+	 */
+	final public void setStreamResetBudget(int resetMessages, long resetBytes) {
+		if (resetMessages < 0 || resetBytes < 0)
+			throw new IllegalArgumentException("negative reset budget");
+		this.resetMessages = resetMessages;
+		this.resetBytes = resetBytes;
+	}
+
+	/**
+	 * Enables or disables Nagle's algorithm. Disabled by default, since
+	 * messages are coalesced in the output buffer. The change only takes
+	 * effect at the time of the next call to openConnection().
+	 * 
+	 * @param tcpNoDelay
+	 *            true to disable Nagle's algorithm.
+	 */
+	final public void setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+	}
+
+	/**
+	 * Sets the socket send and receive buffer sizes; zero keeps the system
+	 * default. The change only takes effect at the time of the next call to
+	 * openConnection().
+	 * 
+	 * @param sendBufferSize
+	 *            the send buffer size.
+	 * @param receiveBufferSize
+	 *            the receive buffer size.
+	 */
+	final public void setSocketBufferSizes(int sendBufferSize, int receiveBufferSize) {
+		if (sendBufferSize < 0 || receiveBufferSize < 0)
+			throw new IllegalArgumentException("negative buffer size");
+		this.sendBufferSize = sendBufferSize;
+		this.receiveBufferSize = receiveBufferSize;
+	}
+
+	/**
+	 * Sets the size of the buffer through which messages are written. The
+	 * change only takes effect at the time of the next call to
+	 * openConnection().
+	 * 
+	 * @param outputBufferSize
+	 *            the buffer size.
+	 */
+	final public void setOutputBufferSize(int outputBufferSize) {
+		if (outputBufferSize < 1)
+			throw new IllegalArgumentException("output buffer size must be positive");
+		this.outputBufferSize = outputBufferSize;
+	}
+
+	/**
+	 * Trades latency for throughput. With automatic flushing, the default,
+	 * every message is flushed as it is sent. Without it, messages accumulate
+	 * in the output buffer until it fills up or <code> flush </code> is
+	 * called, so a burst goes out in fewer, fuller packets.
+	 * 
+	 * @param autoFlush
+	 *            true to flush every message.
+	 */
+	final public void setAutoFlush(boolean autoFlush) {
+		this.autoFlush = autoFlush;
+	}
+
+	/**
+	 * Selects the kind of thread that reads data from the server. The change
+	 * only takes effect at the time of the next call to openConnection().
+	 * 
+	 * @param threadMode
+	 *            the kind of reader thread.
+	 * @exception UnsupportedOperationException
+	 *                if this runtime does not support that kind of thread.
+	 */
+	final public void setThreadMode(ThreadMode threadMode) {
+		if (!threadMode.isSupported())
+			throw new UnsupportedOperationException(threadMode + " threads are not supported by this runtime");
+		this.threadMode = threadMode;
+	}
+
 	/**
 	 * @return the host name.
 	 */
@@ -230,7 +501,14 @@ public abstract class AbstractClient implements Runnable {
 				// Get data from Server and send it to the handler
 				// The thread waits indefinitely at the following
 				// statement until something is received from the server
-				msg = input.readObject();
+				msg = wireCodec != null ? Frames.read(frameInput, wireCodec, compressor) : input.readObject();
+
+				// The answer of the server to the offer of compression
+				if (msg instanceof Frames.Control) {
+					if (compressor != null && ((Frames.Control) msg).has(Frames.Control.DEFLATE))
+						serverInflates = true;
+					continue;
+				}
 
 				// Concrete subclasses do what they want with the
 				// msg by implementing the following method
@@ -310,13 +588,25 @@ public abstract class AbstractClient implements Runnable {
 			// Close the input stream
 			if (input != null)
 				input.close();
+
+			// Close the frame streams
+			if (frameOutput != null)
+				frameOutput.close();
+			if (frameInput != null)
+				frameInput.close();
 		} finally {
+			// End the deflaters and inflaters of the connection
+			if (compressor != null)
+				compressor.close();
+
 			// Set the streams and the sockets to NULL no matter what
 			// Doing so allows, but does not require, any finalizers
 			// of these objects to reclaim system resources if and
 			// when they are garbage collected.
 			output = null;
 			input = null;
+			frameOutput = null;
+			frameInput = null;
 			clientSocket = null;
 		}
 	}
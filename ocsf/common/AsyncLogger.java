@@ -0,0 +1,426 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+import java.io.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A logger that never blocks the thread that logs.
+ * <p>
+ * A call records its level, template and arguments in a slot of a ring
+ * buffer shared by all the loggers, and returns. A single background thread
+ * formats the entries and writes them to the output. When the buffer is full,
+ * entries are dropped and counted rather than waited for. Templates use
+ * <code> {} </code> for each argument, and arguments are only turned into
+ * strings if the entry is written, so a disabled level costs one comparison.
+ * There are overloads for up to three arguments so that no array is
+ * allocated.
+ * <p>
+ * Strings, boxed primitives, enums and envelopes, which are immutable, are
+ * formatted by the writer thread, and so is a traced message of one of
+ * those. Any other argument is turned into a string by the thread that logs,
+ * so that an object changed after the call is written as it was at the time
+ * of the call. A throwable is kept as is for its stack trace.
+ * <p>
+ * The level is shared by all the loggers. It is read from the system
+ * property <code> ocsf.log.level </code> at startup, in any case, INFO by
+ * default or if the property names no level, and can be set to OFF, for
+ * benchmarks for instance.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+public final class AsyncLogger {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The number of entries the ring buffer holds. A power of two.
+	 */
+	private static final int CAPACITY = 8192;
+
+	/**
+	 * The format of the time of the entries.
+	 */
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+	/**
+	 * The loggers, by name.
+	 */
+	private static final ConcurrentHashMap<String, AsyncLogger> loggers = new ConcurrentHashMap<String, AsyncLogger>();
+
+	/**
+	 * The ring buffer.
+	 */
+	private static final Entry[] entries = new Entry[CAPACITY];
+
+	/**
+	 * The sequence number of the next entry to be claimed by a producer.
+	 */
+	private static final AtomicLong claimed = new AtomicLong();
+
+	/**
+	 * The sequence number of the next entry to be written by the writer.
+	 */
+	private static volatile long consumed = 0;
+
+	/**
+	 * Set while the writer is parked, waiting for an entry.
+	 */
+	private static volatile boolean writerParked = false;
+
+	/**
+	 * The number of entries dropped because the buffer was full.
+	 */
+	private static final LongAdder dropped = new LongAdder();
+
+	/**
+	 * The lowest level written.
+	 */
+	private static volatile Level level = parseLevel(System.getProperty("ocsf.log.level"));
+
+	/**
+	 * Where the entries are written.
+	 */
+	private static volatile PrintStream output = System.out;
+
+	/**
+	 * The thread writing the entries.
+	 */
+	private static final Thread writer;
+
+	static {
+		for (int i = 0; i < CAPACITY; i++)
+			entries[i] = new Entry(i - CAPACITY);
+
+		writer = new Thread(AsyncLogger::writeEntries, "ocsf-logger");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(AsyncLogger::flush, "ocsf-logger-flush"));
+	}
+
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * The name of the logger, written with each entry.
+	 */
+	private final String name;
+
+	// CONSTRUCTORS *****************************************************
+
+	private AsyncLogger(String name) {
+		this.name = name;
+	}
+
+	// CLASS METHODS ****************************************************
+
+	/**
+	 * @param name
+	 *            the name of the logger, usually that of a class.
+	 * @return the logger of that name.
+	 */
+	public static AsyncLogger getLogger(String name) {
+		return loggers.computeIfAbsent(name, AsyncLogger::new);
+	}
+
+	/**
+	 * @param name
+	 *            the name of a level, in any case, or null.
+	 * @return the level of that name, or INFO if there is none, in which
+	 *         case a warning is printed to the standard error.
+	 */
+	private static Level parseLevel(String name) {
+		if (name == null)
+			return Level.INFO;
+		try {
+			return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException ex) {
+			System.err.println("Unknown log level \"" + name + "\" in ocsf.log.level, using INFO instead");
+			return Level.INFO;
+		}
+	}
+
+	/**
+	 * @param arg
+	 *            an argument of an entry.
+	 * @return the argument if the writer can format it later, otherwise the
+	 *         string it stands for now.
+	 */
+	private static Object snapshot(Object arg) {
+		if (arg == null || arg instanceof String || arg instanceof Integer || arg instanceof Long
+				|| arg instanceof Double || arg instanceof Float || arg instanceof Short || arg instanceof Byte
+				|| arg instanceof Boolean || arg instanceof Character || arg instanceof Enum
+				|| arg instanceof Throwable || arg instanceof Envelope)
+			return arg;
+		if (arg instanceof TracedMessage) {
+			Object payload = ((TracedMessage) arg).getPayload();
+			if (snapshot(payload) == payload)
+				return arg;
+		}
+		return String.valueOf(arg);
+	}
+
+	/**
+	 * Sets the lowest level written by all the loggers.
+	 *
+	 * @param newLevel
+	 *            the level, OFF to write nothing.
+	 */
+	public static void setLevel(Level newLevel) {
+		level = newLevel;
+	}
+
+	/**
+	 * @return the lowest level written.
+	 */
+	public static Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * Sets where the entries are written from now on.
+	 *
+	 * @param newOutput
+	 *            the output stream.
+	 */
+	public static void setOutput(PrintStream newOutput) {
+		output = newOutput;
+	}
+
+	/**
+	 * @return the number of entries dropped because the buffer was full.
+	 */
+	public static long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Waits, for at most a second, until the entries logged so far are
+	 * written.
+	 */
+	public static void flush() {
+		long target = claimed.get();
+		long deadline = System.nanoTime() + 1000000000L;
+		while (consumed - target < 0 && System.nanoTime() - deadline < 0) {
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(100000);
+		}
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * @param entryLevel
+	 *            a level.
+	 * @return true if entries of that level are written.
+	 */
+	public boolean isEnabled(Level entryLevel) {
+		return entryLevel.compareTo(level) >= 0 && entryLevel != Level.OFF;
+	}
+
+	public void debug(String template) {
+		log(Level.DEBUG, template, null, null, null, 0);
+	}
+
+	public void debug(String template, Object arg) {
+		log(Level.DEBUG, template, arg, null, null, 1);
+	}
+
+	public void debug(String template, Object arg1, Object arg2) {
+		log(Level.DEBUG, template, arg1, arg2, null, 2);
+	}
+
+	public void debug(String template, Object arg1, Object arg2, Object arg3) {
+		log(Level.DEBUG, template, arg1, arg2, arg3, 3);
+	}
+
+	public void info(String template) {
+		log(Level.INFO, template, null, null, null, 0);
+	}
+
+	public void info(String template, Object arg) {
+		log(Level.INFO, template, arg, null, null, 1);
+	}
+
+	public void info(String template, Object arg1, Object arg2) {
+		log(Level.INFO, template, arg1, arg2, null, 2);
+	}
+
+	public void info(String template, Object arg1, Object arg2, Object arg3) {
+		log(Level.INFO, template, arg1, arg2, arg3, 3);
+	}
+
+	public void warn(String template) {
+		log(Level.WARN, template, null, null, null, 0);
+	}
+
+	public void warn(String template, Object arg) {
+		log(Level.WARN, template, arg, null, null, 1);
+	}
+
+	public void warn(String template, Object arg1, Object arg2) {
+		log(Level.WARN, template, arg1, arg2, null, 2);
+	}
+
+	public void warn(String template, Object arg1, Object arg2, Object arg3) {
+		log(Level.WARN, template, arg1, arg2, arg3, 3);
+	}
+
+	public void error(String template) {
+		log(Level.ERROR, template, null, null, null, 0);
+	}
+
+	public void error(String template, Object arg) {
+		log(Level.ERROR, template, arg, null, null, 1);
+	}
+
+	public void error(String template, Object arg1, Object arg2) {
+		log(Level.ERROR, template, arg1, arg2, null, 2);
+	}
+
+	public void error(String template, Object arg1, Object arg2, Object arg3) {
+		log(Level.ERROR, template, arg1, arg2, arg3, 3);
+	}
+
+	/**
+	 * Records an entry in the ring buffer, or drops it if the buffer is
+	 * full.
+	 */
+	private void log(Level entryLevel, String template, Object arg1, Object arg2, Object arg3, int argCount) {
+		if (!isEnabled(entryLevel))
+			return;
+		arg1 = snapshot(arg1);
+		arg2 = snapshot(arg2);
+		arg3 = snapshot(arg3);
+
+		// Claim a slot the writer is done with
+		long sequence;
+		do {
+			sequence = claimed.get();
+			if (sequence - consumed >= CAPACITY) {
+				dropped.increment();
+				return;
+			}
+		} while (!claimed.compareAndSet(sequence, sequence + 1));
+
+		Entry entry = entries[(int) sequence & (CAPACITY - 1)];
+		entry.time = System.currentTimeMillis();
+		entry.level = entryLevel;
+		entry.logger = name;
+		entry.template = template;
+		entry.arg1 = arg1;
+		entry.arg2 = arg2;
+		entry.arg3 = arg3;
+		entry.argCount = argCount;
+		entry.published = sequence; // Hands the slot to the writer
+
+		if (writerParked)
+			LockSupport.unpark(writer);
+	}
+
+	/**
+	 * Writes the entries as they are published. Run by the writer thread.
+	 */
+	private static void writeEntries() {
+		StringBuilder line = new StringBuilder(256);
+		while (true) {
+			long sequence = consumed;
+			Entry entry = entries[(int) sequence & (CAPACITY - 1)];
+			if (entry.published != sequence) {
+				output.flush();
+				writerParked = true;
+				if (entry.published != sequence) // Published before the flag was seen
+					LockSupport.park();
+				writerParked = false;
+				continue;
+			}
+
+			line.setLength(0);
+			entry.format(line);
+			entry.clear();
+			output.println(line);
+			consumed = sequence + 1; // Gives the slot back, and tells flush
+		}
+	}
+
+	// INNER CLASSES ****************************************************
+
+	/**
+	 * The levels of the entries, lowest first.
+	 */
+	public enum Level {
+		DEBUG, INFO, WARN, ERROR, OFF
+	}
+
+	/**
+	 * A slot of the ring buffer, reused for every entry that lands in it.
+	 */
+	private static final class Entry {
+		/**
+		 * The sequence number of the entry in the slot, once it is complete.
+		 */
+		volatile long published;
+
+		long time;
+		Level level;
+		String logger;
+		String template;
+		Object arg1;
+		Object arg2;
+		Object arg3;
+		int argCount;
+
+		Entry(long published) {
+			this.published = published;
+		}
+
+		/**
+		 * Appends the entry as a line of text, filling the placeholders of
+		 * the template with the arguments.
+		 */
+		void format(StringBuilder line) {
+			line.append(TIME_FORMAT.format(LocalTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault())));
+			line.append(' ').append(level).append(' ').append(logger).append(" - ");
+
+			int from = 0;
+			for (int i = 0; i < argCount; i++) {
+				int at = template.indexOf("{}", from);
+				if (at < 0)
+					break;
+				line.append(template, from, at).append(i == 0 ? arg1 : i == 1 ? arg2 : arg3);
+				from = at + 2;
+			}
+			line.append(template, from, template.length());
+
+			Object last = argCount == 0 ? null : argCount == 1 ? arg1 : argCount == 2 ? arg2 : arg3;
+			if (last instanceof Throwable) {
+				StringWriter trace = new StringWriter();
+				((Throwable) last).printStackTrace(new PrintWriter(trace));
+				line.append(System.lineSeparator()).append(trace.toString().stripTrailing());
+			}
+		}
+
+		/**
+		 * Drops the references held by the slot.
+		 */
+		void clear() {
+			level = null;
+			logger = null;
+			template = null;
+			arg1 = null;
+			arg2 = null;
+			arg3 = null;
+		}
+	}
+}
+// End of AsyncLogger class
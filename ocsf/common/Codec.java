@@ -0,0 +1,49 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * A <code> Codec </code> turns messages into the payload of frames and back.
+ * Both ends of a connection must use the same codec. The framework adds the
+ * length prefix itself (see <code> Frames </code>), so a codec only deals
+ * with the bytes of a single message.
+ * <p>
+ * Implementations must be thread-safe: one codec serves every connection of
+ * a server.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ * @see ocsf.common.SerializationCodec
+ * @see ocsf.common.Utf8Codec
+ */
+public interface Codec {
+	/**
+	 * Writes the payload encoding a message.
+	 *
+	 * @param msg
+	 *            the message to encode.
+	 * @param out
+	 *            the stream receiving the payload.
+	 * @exception IOException
+	 *                if the message cannot be encoded by this codec.
+	 */
+	void encode(Object msg, OutputStream out) throws IOException;
+
+	/**
+	 * Decodes the payload of one frame.
+	 *
+	 * @param payload
+	 *            the payload bytes, header excluded; consumed by this call.
+	 * @return the decoded message.
+	 * @exception IOException
+	 *                if the payload is not valid for this codec.
+	 */
+	Object decode(ByteBuffer payload) throws IOException;
+}
+// End of Codec interface
@@ -0,0 +1,214 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.common;
+
+import java.io.Serializable;
+
+/**
+ * A typed message: what it is, who sent it, the room it was sent to, its
+ * number among the messages of its sender, and its text. A receiver
+ * dispatches on the type instead of looking for prefixes in the text, and a
+ * server relays the text of a chat message in a new envelope rather than
+ * pasting the name of the sender in front of it, so the envelope it
+ * broadcasts is built, and encoded, once.
+ * <p>
+ * Envelopes are serializable, so they travel over object streams and the
+ * serialization codec, but the <code> EnvelopeCodec </code> encodes them in
+ * a few bytes more than their text.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ * @see ocsf.common.EnvelopeCodec
+ */
+public final class Envelope implements Serializable {
+	// CLASS VARIABLES **************************************************
+
+	private static final long serialVersionUID = 1L;
+
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * What the message is.
+	 */
+	private final Type type;
+
+	/**
+	 * The Id of the sender, or null.
+	 */
+	private final String sender;
+
+	/**
+	 * The room the message was sent to, or null for the default one.
+	 */
+	private final String room;
+
+	/**
+	 * The number of the message among those of its sender, or zero.
+	 */
+	private final long sequence;
+
+	/**
+	 * The text of the message, or null.
+	 */
+	private final String payload;
+
+	// CONSTRUCTORS *****************************************************
+
+	/**
+	 * Constructs an envelope.
+	 *
+	 * @param type
+	 *            what the message is.
+	 * @param sender
+	 *            the Id of the sender, or null.
+	 * @param room
+	 *            the room the message was sent to, or null for the default
+	 *            one.
+	 * @param sequence
+	 *            the number of the message among those of its sender.
+	 * @param payload
+	 *            the text of the message, or null.
+	 */
+	public Envelope(Type type, String sender, String room, long sequence, String payload) {
+		if (type == null)
+			throw new IllegalArgumentException("An envelope needs a type");
+		this.type = type;
+		this.sender = sender;
+		this.room = room;
+		this.sequence = sequence;
+		this.payload = payload;
+	}
+
+	/**
+	 * Constructs an envelope with a type and a text only.
+	 *
+	 * @param type
+	 *            what the message is.
+	 * @param payload
+	 *            the text of the message.
+	 */
+	public Envelope(Type type, String payload) {
+		this(type, null, null, 0, payload);
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getSender() {
+		return sender;
+	}
+
+	public String getRoom() {
+		return room;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public String getPayload() {
+		return payload;
+	}
+
+	/**
+	 * @return the message as a chat user reads it, such as
+	 *         <code> [room] sender - text </code> for a chat message.
+	 */
+	public String toString() {
+		switch (type) {
+		case LOGIN:
+			return "#login " + sender;
+		case CHAT:
+			return (room == null ? "" : "[" + room + "] ") + sender + " - " + payload;
+		case PRIVATE:
+			return sender + " (private) - " + payload;
+		case SERVER:
+			return "SERVER MESSAGE> " + payload;
+		case ERROR:
+			return "Error: " + payload;
+		default:
+			return String.valueOf(payload);
+		}
+	}
+
+	// INNER TYPES ******************************************************
+
+	/**
+	 * The types of message, each with the byte identifying it on the wire.
+	 */
+	public enum Type {
+		/**
+		 * From a client logging in: the sender is its login Id.
+		 */
+		LOGIN(1),
+
+		/**
+		 * A chat message, for every member of a room.
+		 */
+		CHAT(2),
+
+		/**
+		 * A chat message for one user only.
+		 */
+		PRIVATE(3),
+
+		/**
+		 * A command for the server, the whole command line as text.
+		 */
+		COMMAND(4),
+
+		/**
+		 * An announcement from the server's operator.
+		 */
+		SERVER(5),
+
+		/**
+		 * A reply from the server, such as the result of a command.
+		 */
+		INFO(6),
+
+		/**
+		 * A reply from the server telling something failed.
+		 */
+		ERROR(7);
+
+		/**
+		 * The types, by code.
+		 */
+		private static final Type[] BY_CODE = new Type[8];
+
+		static {
+			for (Type type : values())
+				BY_CODE[type.code] = type;
+		}
+
+		private final byte code;
+
+		private Type(int code) {
+			this.code = (byte) code;
+		}
+
+		/**
+		 * @return the byte identifying this type on the wire.
+		 */
+		public byte getCode() {
+			return code;
+		}
+
+		/**
+		 * @param code
+		 *            the byte identifying a type.
+		 * @return the type with that code, or null if there is none.
+		 */
+		public static Type fromCode(byte code) {
+			return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+		}
+	}
+}
+// End of Envelope class
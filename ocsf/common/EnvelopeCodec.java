@@ -0,0 +1,157 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A binary codec for typed messages. An <code> Envelope </code> is written
+ * as its type byte, a byte telling which of its fields are present, its
+ * sequence number, and its strings in UTF-8, each after its length. Plain
+ * strings and <code> TracedMessage </code>s carrying either are encoded too,
+ * so that a chat server can serve clients still sending text.
+ * <p>
+ * Like the UTF-8 codec, it has no class descriptors, so nothing but these
+ * messages can be received.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+public class EnvelopeCodec implements Codec {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The first byte of a payload, telling what kind of message follows.
+	 */
+	private static final byte STRING = 0;
+	private static final byte ENVELOPE = 1;
+	private static final byte TRACED = 2;
+
+	/**
+	 * The bits telling which fields of an envelope are present.
+	 */
+	private static final int HAS_SENDER = 1;
+	private static final int HAS_ROOM = 2;
+	private static final int HAS_PAYLOAD = 4;
+
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * Writes a string, an envelope, or a traced message carrying either.
+	 *
+	 * @exception NotSerializableException
+	 *                if the message is none of those.
+	 */
+	public void encode(Object msg, OutputStream out) throws IOException {
+		DataOutputStream output = new DataOutputStream(out);
+		if (msg instanceof TracedMessage) {
+			TracedMessage traced = (TracedMessage) msg;
+			output.writeByte(TRACED);
+			writeString(output, traced.getOrigin());
+			output.writeLong(traced.getSequence());
+			output.writeLong(traced.getSentTime());
+			output.writeLong(traced.getServerReceivedTime());
+			output.writeLong(traced.getServerSentTime());
+			msg = traced.getPayload();
+			if (msg instanceof TracedMessage)
+				throw new NotSerializableException("nested " + TracedMessage.class.getName());
+		}
+
+		if (msg instanceof Envelope) {
+			Envelope envelope = (Envelope) msg;
+			output.writeByte(ENVELOPE);
+			output.writeByte(envelope.getType().getCode());
+			output.writeByte((envelope.getSender() != null ? HAS_SENDER : 0)
+					| (envelope.getRoom() != null ? HAS_ROOM : 0) | (envelope.getPayload() != null ? HAS_PAYLOAD : 0));
+			output.writeLong(envelope.getSequence());
+			if (envelope.getSender() != null)
+				writeString(output, envelope.getSender());
+			if (envelope.getRoom() != null)
+				writeString(output, envelope.getRoom());
+			if (envelope.getPayload() != null)
+				writeString(output, envelope.getPayload());
+		} else if (msg instanceof CharSequence) {
+			output.writeByte(STRING);
+			writeString(output, msg.toString());
+		} else {
+			throw new NotSerializableException(msg == null ? "null" : msg.getClass().getName());
+		}
+		output.flush();
+	}
+
+	public Object decode(ByteBuffer payload) throws IOException {
+		try {
+			byte kind = payload.get();
+			if (kind != TRACED)
+				return decodeMessage(kind, payload);
+
+			String origin = readString(payload);
+			long sequence = payload.getLong();
+			long sentTime = payload.getLong();
+			long serverReceivedTime = payload.getLong();
+			long serverSentTime = payload.getLong();
+			Object msg = decodeMessage(payload.get(), payload);
+			return new TracedMessage(origin, sequence, msg, sentTime, serverReceivedTime, serverSentTime);
+		} catch (RuntimeException ex) {
+			// Truncated payload, or invalid lengths
+			throw new StreamCorruptedException("invalid envelope: " + ex);
+		}
+	}
+
+	/**
+	 * Decodes a string or an envelope.
+	 */
+	private static Object decodeMessage(byte kind, ByteBuffer payload) throws IOException {
+		if (kind == STRING)
+			return readString(payload);
+		if (kind != ENVELOPE)
+			throw new StreamCorruptedException("unknown message kind " + kind);
+
+		Envelope.Type type = Envelope.Type.fromCode(payload.get());
+		if (type == null)
+			throw new StreamCorruptedException("unknown envelope type");
+		int fields = payload.get();
+		long sequence = payload.getLong();
+		String sender = (fields & HAS_SENDER) != 0 ? readString(payload) : null;
+		String room = (fields & HAS_ROOM) != 0 ? readString(payload) : null;
+		String text = (fields & HAS_PAYLOAD) != 0 ? readString(payload) : null;
+		return new Envelope(type, sender, room, sequence, text);
+	}
+
+	// CLASS METHODS ****************************************************
+
+	private static void writeString(DataOutputStream output, String string) throws IOException {
+		if (string == null) {
+			output.writeInt(-1);
+			return;
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static String readString(ByteBuffer payload) {
+		int length = payload.getInt();
+		if (length < 0)
+			return null;
+		if (length > payload.remaining())
+			throw new IllegalArgumentException("string longer than the payload");
+		String string;
+		if (payload.hasArray()) {
+			string = new String(payload.array(), payload.arrayOffset() + payload.position(), length,
+					StandardCharsets.UTF_8);
+			payload.position(payload.position() + length);
+		} else {
+			byte[] bytes = new byte[length];
+			payload.get(bytes);
+			string = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return string;
+	}
+}
+// End of EnvelopeCodec class
@@ -0,0 +1,233 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the payload of frames at or above a size threshold, with
+ * Deflate and a preset dictionary of common English and chat text. Each
+ * frame is compressed on its own, so frames can still be decoded without
+ * any state from earlier frames, and a frame compressed once can be sent to
+ * any number of peers; the dictionary is what makes short frames worth
+ * compressing all the same.
+ * <p>
+ * A frame is only sent compressed if it came out smaller, and only to a peer
+ * that announced, in a control frame, that it can inflate it (see
+ * <code> Frames </code>). The dictionary is part of that capability, so it
+ * is the same for every peer.
+ * <p>
+ * Compressors are thread-safe. Each compressor keeps a small pool of
+ * <code> Deflater </code> and <code> Inflater </code> objects, which hold
+ * native memory, and lends them to whichever thread compresses or inflates a
+ * frame. Those left over when the pool is full are ended at once, and
+ * <code> close </code> ends those in the pool, so the native memory held
+ * does not depend on how many threads, virtual or not, come and go.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+public final class FrameCompressor {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The preset dictionary. Deflate finds the nearest matches cheapest, so
+	 * the most common text comes last.
+	 */
+	private static final byte[] DICTIONARY = ("http://https://www..com/.org/ .png .jpg "
+			+ "Exception in thread \"main\" java.lang.NullPointerException at line "
+			+ "public static void main(String[] args) { return null; } "
+			+ "Could you please send me the link to the document? "
+			+ "I don't know what happened, but it works now. "
+			+ "Let me know if you have any questions about the meeting tomorrow. "
+			+ "I think we should talk about it later this afternoon or next week. "
+			+ "Does anyone know how to fix this error? It was working yesterday. "
+			+ "Thanks for the help, that makes sense. Sounds good to me. "
+			+ "lol haha yeah ok okay thanks sure sorry please maybe really right now "
+			+ "because about after again all also always another any around back "
+			+ "been before being better between both came can't come could day did "
+			+ "didn't does doing done down each even every first from get getting "
+			+ "give going good got great had has have having here how into just know "
+			+ "last like little look made make many more most much need never new "
+			+ "only other our out over people said same say see should since some "
+			+ "something still such take than that's their them then there these "
+			+ "they thing think this those though through time today too under until "
+			+ "very want was way well were what when where which while who why will "
+			+ "with work would year you your you're I'm it's the and that for are "
+			+ "not but with this have from they will one all would there their what "
+			+ "about which when make can like time just him know take into year your "
+			+ "some could them see other than then now look only come its over think "
+			+ "also back after use two how our work first well way even new want "
+			+ "because any these give day most us is was be to of in it on at as "
+			+ "by we or an if so no my me he do up the and to of a in is it you that ")
+			.getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * The most deflaters, and the most inflaters, kept by a compressor.
+	 */
+	private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * The smallest payload compressed.
+	 */
+	private final int threshold;
+
+	/**
+	 * The deflaters not in use.
+	 */
+	private final ArrayBlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(POOL_SIZE);
+
+	/**
+	 * The inflaters not in use.
+	 */
+	private final ArrayBlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(POOL_SIZE);
+
+	/**
+	 * Whether the compressor is closed, after which nothing is kept in the
+	 * pools.
+	 */
+	private volatile boolean closed = false;
+
+	// CONSTRUCTORS *****************************************************
+
+	/**
+	 * Constructs a compressor.
+	 *
+	 * @param threshold
+	 *            the smallest payload, in bytes, to compress.
+	 */
+	public FrameCompressor(int threshold) {
+		if (threshold < 1)
+			throw new IllegalArgumentException("Threshold must be positive");
+		this.threshold = threshold;
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * @return the smallest payload compressed, in bytes.
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Compresses a frame if its payload is large enough and comes out smaller.
+	 *
+	 * @param frame
+	 *            a frame, header included, not compressed; not consumed by
+	 *            this call.
+	 * @return a new compressed frame, or the frame given.
+	 */
+	public ByteBuffer compress(ByteBuffer frame) {
+		int length = frame.remaining() - Frames.HEADER_LENGTH;
+		if (length < threshold || (frame.getInt(frame.position()) & (Frames.COMPRESSED | Frames.CONTROL)) != 0)
+			return frame;
+
+		ByteBuffer payload = frame.duplicate();
+		payload.position(payload.position() + Frames.HEADER_LENGTH);
+
+		Deflater deflater = deflaters.poll();
+		if (deflater == null)
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		ByteBuffer compressed = ByteBuffer.allocate(Frames.HEADER_LENGTH + length - 1);
+		try {
+			deflater.reset();
+			deflater.setDictionary(DICTIONARY);
+			deflater.setInput(payload);
+			deflater.finish();
+
+			// Not worth it unless it saves something
+			compressed.position(Frames.HEADER_LENGTH);
+			while (!deflater.finished() && compressed.hasRemaining())
+				deflater.deflate(compressed);
+			if (!deflater.finished())
+				return frame;
+		} finally {
+			if (!deflaters.offer(deflater) || closed && deflaters.remove(deflater))
+				deflater.end();
+		}
+
+		compressed.flip();
+		compressed.putInt(0, (compressed.limit() - Frames.HEADER_LENGTH) | Frames.COMPRESSED);
+		return compressed;
+	}
+
+	/**
+	 * Inflates the payload of a compressed frame.
+	 *
+	 * @param payload
+	 *            the compressed payload; consumed by this call.
+	 * @return the payload as it was before compression.
+	 * @exception IOException
+	 *                if the payload is not valid, or inflates beyond the
+	 *                largest payload accepted.
+	 */
+	public ByteBuffer inflate(ByteBuffer payload) throws IOException {
+		Inflater inflater = inflaters.poll();
+		if (inflater == null)
+			inflater = new Inflater(true);
+		try {
+			return inflate(payload, inflater);
+		} finally {
+			if (!inflaters.offer(inflater) || closed && inflaters.remove(inflater))
+				inflater.end();
+		}
+	}
+
+	/**
+	 * Ends the deflaters and inflaters kept, freeing their native memory.
+	 * The compressor can still be used afterwards, but keeps nothing: each
+	 * frame then gets a deflater or inflater of its own.
+	 */
+	public void close() {
+		closed = true;
+		Deflater deflater;
+		while ((deflater = deflaters.poll()) != null)
+			deflater.end();
+		Inflater inflater;
+		while ((inflater = inflaters.poll()) != null)
+			inflater.end();
+	}
+
+	// CLASS METHODS ****************************************************
+
+	private static ByteBuffer inflate(ByteBuffer payload, Inflater inflater) throws IOException {
+		inflater.reset();
+		inflater.setDictionary(DICTIONARY);
+		inflater.setInput(payload);
+
+		ByteBuffer inflated = ByteBuffer.allocate(Math.min(Frames.MAX_PAYLOAD_LENGTH, 4 * payload.remaining() + 64));
+		try {
+			while (!inflater.finished()) {
+				if (!inflated.hasRemaining()) {
+					if (inflated.capacity() == Frames.MAX_PAYLOAD_LENGTH)
+						throw new StreamCorruptedException("compressed frame too large");
+					ByteBuffer larger = ByteBuffer.allocate(Math.min(Frames.MAX_PAYLOAD_LENGTH, 2 * inflated.capacity()));
+					inflated.flip();
+					larger.put(inflated);
+					inflated = larger;
+				}
+				if (inflater.inflate(inflated) == 0 && inflater.needsInput())
+					throw new StreamCorruptedException("truncated compressed frame");
+			}
+		} catch (DataFormatException ex) {
+			throw new StreamCorruptedException("invalid compressed frame: " + ex.getMessage());
+		}
+		payload.position(payload.limit());
+		inflated.flip();
+		return inflated;
+	}
+}
+// End of FrameCompressor class
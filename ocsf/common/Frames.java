@@ -0,0 +1,242 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * The <code> Frames </code> class implements the length-prefixed framing used
+ * whenever a <code> Codec </code> is selected, and always by the non-blocking
+ * server transport. Each frame is a 4-byte big-endian length followed by that
+ * many bytes of payload holding one message, encoded by the codec, so a frame
+ * can be decoded without any state from earlier frames.
+ * <p>
+ * The top bits of the length are flags. A compressed frame holds the payload
+ * deflated by a <code> FrameCompressor </code>, which is sent only to a peer
+ * that said it can inflate it. A control frame is not a message: it carries
+ * the capabilities of the peer sending it, with which compression is
+ * negotiated, and is handled by the framework itself.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+public final class Frames {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The number of bytes in the length prefix of a frame.
+	 */
+	public static final int HEADER_LENGTH = 4;
+
+	/**
+	 * The largest payload accepted by a receiver. Larger lengths are treated
+	 * as a corrupt or hostile stream.
+	 */
+	public static final int MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+
+	/**
+	 * The flag of the length of a compressed frame.
+	 */
+	public static final int COMPRESSED = 0x80000000;
+
+	/**
+	 * The flag of the length of a control frame.
+	 */
+	public static final int CONTROL = 0x40000000;
+
+	/**
+	 * The bits of the length that are not flags.
+	 */
+	private static final int LENGTH_MASK = ~(COMPRESSED | CONTROL);
+
+	// CONSTRUCTORS *****************************************************
+
+	private Frames() {
+	}
+
+	// CLASS METHODS ****************************************************
+
+	/**
+	 * Encodes a message into a complete frame, header included.
+	 *
+	 * @param msg
+	 *            the message to encode.
+	 * @param codec
+	 *            the codec producing the payload.
+	 * @return a buffer positioned at the start of the frame.
+	 * @exception IOException
+	 *                if the message cannot be encoded, or its payload is
+	 *                larger than <code> MAX_PAYLOAD_LENGTH </code>, which
+	 *                the peer would reject.
+	 */
+	public static ByteBuffer encode(Object msg, Codec codec) throws IOException {
+		FrameBuilder bytes = new FrameBuilder();
+		codec.encode(msg, bytes);
+		return bytes.toFrame();
+	}
+
+	/**
+	 * Reads one frame from a blocking stream and decodes it.
+	 *
+	 * @param input
+	 *            the stream to read from.
+	 * @param codec
+	 *            the codec decoding the payload.
+	 * @param compressor
+	 *            the compressor inflating compressed frames, or null if the
+	 *            peer was never told this end can inflate them.
+	 * @return the decoded message.
+	 * @exception IOException
+	 *                if an I/O error occurs or the frame is invalid.
+	 */
+	public static Object read(DataInputStream input, Codec codec, FrameCompressor compressor) throws IOException {
+		int header = input.readInt();
+		byte[] payload = new byte[checkLength(header)];
+		input.readFully(payload);
+		return decode(header, ByteBuffer.wrap(payload), codec, compressor);
+	}
+
+	/**
+	 * Decodes the payload of a frame according to the flags of its header:
+	 * inflates a compressed payload before decoding it, and turns a control
+	 * frame into a <code> Control </code>.
+	 *
+	 * @param header
+	 *            the header of the frame.
+	 * @param payload
+	 *            the payload bytes, header excluded; consumed by this call.
+	 * @param codec
+	 *            the codec decoding the payload.
+	 * @param compressor
+	 *            the compressor inflating compressed frames, or null if the
+	 *            peer was never told this end can inflate them.
+	 * @return the decoded message, or a <code> Control </code>.
+	 * @exception IOException
+	 *                if the payload is not valid.
+	 */
+	public static Object decode(int header, ByteBuffer payload, Codec codec, FrameCompressor compressor)
+			throws IOException {
+		if ((header & CONTROL) != 0) {
+			int capabilities = payload.remaining() >= 4 ? payload.getInt() : 0;
+			payload.position(payload.limit());
+			return new Control(capabilities);
+		}
+		if ((header & COMPRESSED) != 0) {
+			if (compressor == null)
+				throw new StreamCorruptedException("unexpected compressed frame");
+			payload = compressor.inflate(payload);
+		}
+		return codec.decode(payload);
+	}
+
+	/**
+	 * Builds a control frame.
+	 *
+	 * @param capabilities
+	 *            the capabilities of the sender, a combination of the
+	 *            constants of <code> Control </code>.
+	 * @return a buffer positioned at the start of the frame.
+	 */
+	public static ByteBuffer control(int capabilities) {
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + 4);
+		frame.putInt(CONTROL | 4).putInt(capabilities).flip();
+		return frame;
+	}
+
+	/**
+	 * Writes a complete frame to a blocking stream.
+	 *
+	 * @param frame
+	 *            the frame, header included; not consumed by this call.
+	 * @param output
+	 *            the stream to write to.
+	 * @exception IOException
+	 *                if an I/O error occurs.
+	 */
+	public static void write(ByteBuffer frame, OutputStream output) throws IOException {
+		if (frame.hasArray()) {
+			output.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+		} else {
+			byte[] bytes = new byte[frame.remaining()];
+			frame.duplicate().get(bytes);
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * Checks a frame header and returns the length it announces.
+	 *
+	 * @param header
+	 *            the header, the payload length and its flags.
+	 * @return the length, if it is acceptable.
+	 * @exception IOException
+	 *                if the length is too large.
+	 */
+	public static int checkLength(int header) throws IOException {
+		int length = header & LENGTH_MASK;
+		if (length > MAX_PAYLOAD_LENGTH)
+			throw new StreamCorruptedException("invalid frame length " + length);
+		return length;
+	}
+
+	// INNER CLASSES ****************************************************
+
+	/**
+	 * The content of a control frame: the capabilities of the peer that sent
+	 * it.
+	 */
+	public static final class Control {
+		/**
+		 * The capability to inflate frames compressed by a
+		 * <code> FrameCompressor </code>, with its preset dictionary.
+		 */
+		public static final int DEFLATE = 1;
+
+		private final int capabilities;
+
+		Control(int capabilities) {
+			this.capabilities = capabilities;
+		}
+
+		/**
+		 * @return the capabilities, a combination of the constants of this
+		 *         class.
+		 */
+		public int getCapabilities() {
+			return capabilities;
+		}
+
+		/**
+		 * @param capability
+		 *            one of the constants of this class.
+		 * @return true if the peer has that capability.
+		 */
+		public boolean has(int capability) {
+			return (capabilities & capability) != 0;
+		}
+	}
+
+	/**
+	 * Collects a payload after room for the header, so that the frame can be
+	 * handed out without copying the payload again.
+	 */
+	private static final class FrameBuilder extends ByteArrayOutputStream {
+		FrameBuilder() {
+			super(256);
+			count = HEADER_LENGTH;
+		}
+
+		ByteBuffer toFrame() throws IOException {
+			if (count - HEADER_LENGTH > MAX_PAYLOAD_LENGTH)
+				throw new IOException("payload of " + (count - HEADER_LENGTH) + " bytes exceeds the largest frame");
+			ByteBuffer frame = ByteBuffer.wrap(buf, 0, count);
+			frame.putInt(0, count - HEADER_LENGTH);
+			return frame;
+		}
+	}
+}
+// End of Frames class
@@ -0,0 +1,144 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.common;
+
+import java.io.*;
+
+/**
+ * An object output stream that resets itself once a budget of messages or
+ * bytes has been spent since the last reset.
+ * <p>
+ * A plain <code> ObjectOutputStream </code> remembers every object it has
+ * written, so that it can send a back-reference if the object is written
+ * again, and the <code> ObjectInputStream </code> at the other end does the
+ * same. On a connection that stays open for days, both ends would otherwise
+ * retain every message ever sent. A reset clears both tables; its cost is
+ * that class descriptors are sent again after it.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+public class ManagedObjectOutputStream extends ObjectOutputStream {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The default number of messages between two resets.
+	 */
+	public static final int DEFAULT_RESET_MESSAGES = 1024;
+
+	/**
+	 * The default number of bytes between two resets.
+	 */
+	public static final long DEFAULT_RESET_BYTES = 1024 * 1024;
+
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * Counts the bytes written to the underlying stream.
+	 */
+	private final CountingOutputStream counter;
+
+	/**
+	 * The number of messages after which the stream is reset, zero for no
+	 * limit.
+	 */
+	private final int resetMessages;
+
+	/**
+	 * The number of bytes after which the stream is reset, zero for no limit.
+	 */
+	private final long resetBytes;
+
+	/**
+	 * The number of messages written since the last reset.
+	 */
+	private int messages = 0;
+
+	/**
+	 * The byte count of the underlying stream at the last reset.
+	 */
+	private long bytesAtReset = 0;
+
+	// CONSTRUCTORS *****************************************************
+
+	/**
+	 * Constructs a stream and writes the stream header.
+	 *
+	 * @param out
+	 *            the underlying stream.
+	 * @param resetMessages
+	 *            the number of messages between two resets, zero for no
+	 *            limit.
+	 * @param resetBytes
+	 *            the number of bytes between two resets, zero for no limit.
+	 * @exception IOException
+	 *                if the header cannot be written.
+	 */
+	public ManagedObjectOutputStream(OutputStream out, int resetMessages, long resetBytes) throws IOException {
+		this(new CountingOutputStream(out), resetMessages, resetBytes);
+	}
+
+	private ManagedObjectOutputStream(CountingOutputStream counter, int resetMessages, long resetBytes)
+			throws IOException {
+		super(counter);
+		this.counter = counter;
+		this.resetMessages = resetMessages;
+		this.resetBytes = resetBytes;
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * Writes one message, then resets the stream if the budget is spent.
+	 *
+	 * @param msg
+	 *            the message to write.
+	 * @exception IOException
+	 *                if an I/O error occurs.
+	 */
+	public void writeMessage(Object msg) throws IOException {
+		writeObject(msg);
+		messages++;
+
+		if ((resetMessages > 0 && messages >= resetMessages)
+				|| (resetBytes > 0 && counter.count - bytesAtReset >= resetBytes)) {
+			reset();
+			messages = 0;
+			bytesAtReset = counter.count;
+		}
+	}
+
+	/**
+	 * @return the number of bytes written to the underlying stream.
+	 */
+	public long getBytesWritten() {
+		return counter.count;
+	}
+
+	// INNER CLASSES ****************************************************
+
+	/**
+	 * Passes bytes through, counting them.
+	 */
+	private static final class CountingOutputStream extends FilterOutputStream {
+		long count = 0;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
+// End of ManagedObjectOutputStream class
@@ -0,0 +1,83 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * A codec carrying any serializable object with Java serialization, one
+ * independent object per frame. It keeps the flexibility of the original
+ * object streams for applications that send their own classes, without the
+ * handle table that grows for the life of a stream.
+ * <p>
+ * Decoding is restricted by an <code> ObjectInputFilter </code> so that a
+ * peer cannot make the receiver instantiate arbitrary classes. The default
+ * filter accepts the common <code> java.lang </code>, <code> java.util </code>
+ * and <code> java.time </code> classes and the classes of the framework;
+ * applications sending their own classes supply a filter naming them.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+public class SerializationCodec implements Codec {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The pattern of the default filter.
+	 */
+	public static final String DEFAULT_FILTER = "maxdepth=32;maxrefs=100000;"
+			+ "java.lang.*;java.util.*;java.time.*;ocsf.**;!*";
+
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * The filter applied to every decoded frame.
+	 */
+	private final ObjectInputFilter filter;
+
+	// CONSTRUCTORS *****************************************************
+
+	/**
+	 * Constructs a codec with the default filter.
+	 */
+	public SerializationCodec() {
+		this(DEFAULT_FILTER);
+	}
+
+	/**
+	 * Constructs a codec with the given filter.
+	 *
+	 * @param filterPattern
+	 *            a filter pattern, in the syntax of
+	 *            <code> ObjectInputFilter.Config.createFilter </code>.
+	 */
+	public SerializationCodec(String filterPattern) {
+		this.filter = ObjectInputFilter.Config.createFilter(filterPattern);
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	public void encode(Object msg, OutputStream out) throws IOException {
+		ObjectOutputStream output = new ObjectOutputStream(out);
+		output.writeObject(msg);
+		output.flush();
+	}
+
+	public Object decode(ByteBuffer payload) throws IOException {
+		byte[] bytes = new byte[payload.remaining()];
+		payload.get(bytes);
+
+		ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		input.setObjectInputFilter(filter);
+		try {
+			return input.readObject();
+		} catch (ClassNotFoundException ex) {
+			throw new InvalidObjectException(ex.toString());
+		}
+	}
+}
+// End of SerializationCodec class
@@ -0,0 +1,106 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The kind of thread that runs the blocking reader loops of the framework:
+ * the reader of each <code> ConnectionToClient </code> on the server and the
+ * reader of an <code> AbstractClient </code>.
+ * <p>
+ * Virtual threads are cheap enough to keep one per idle connection by the
+ * hundred thousand. They are part of Java 21; on an older runtime
+ * <code> VIRTUAL </code> is reported as unsupported. The framework never holds
+ * a monitor while a reader blocks, so virtual readers do not pin their
+ * carrier thread.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+public enum ThreadMode {
+	/**
+	 * One platform (operating system) thread per reader.
+	 */
+	PLATFORM,
+
+	/**
+	 * One virtual thread per reader. Requires Java 21 or later.
+	 */
+	VIRTUAL;
+
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * <code> Thread.Builder.factory() </code>, or null if the runtime has no
+	 * virtual threads.
+	 */
+	private static final Method FACTORY;
+
+	/**
+	 * <code> Thread.Builder.name(String, long) </code>.
+	 */
+	private static final Method NAME;
+
+	/**
+	 * <code> Thread.ofVirtual() </code>.
+	 */
+	private static final Method OF_VIRTUAL;
+
+	static {
+		Method ofVirtual = null, name = null, factory = null;
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+		} catch (ReflectiveOperationException ex) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		FACTORY = ofVirtual == null ? null : factory;
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * @return true if threads of this kind can be created on this runtime.
+	 */
+	public boolean isSupported() {
+		return this == PLATFORM || FACTORY != null;
+	}
+
+	/**
+	 * Creates a factory for threads of this kind. The threads are numbered
+	 * from zero after the given prefix.
+	 *
+	 * @param prefix
+	 *            the prefix of the thread names.
+	 * @return the thread factory.
+	 * @exception UnsupportedOperationException
+	 *                if the runtime does not support this kind of thread.
+	 */
+	public ThreadFactory newFactory(String prefix) {
+		if (this == PLATFORM) {
+			AtomicLong count = new AtomicLong();
+			return task -> new Thread(task, prefix + count.getAndIncrement());
+		}
+
+		if (!isSupported())
+			throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+
+		try {
+			Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+			return (ThreadFactory) FACTORY.invoke(builder);
+		} catch (ReflectiveOperationException ex) {
+			throw new UnsupportedOperationException("virtual threads are not available", ex);
+		}
+	}
+}
+// End of ThreadMode enum
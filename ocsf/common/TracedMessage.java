@@ -0,0 +1,153 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.common;
+
+import java.io.Serializable;
+
+/**
+ * A message carrying the timestamps needed to measure its latency from end
+ * to end: when its origin sent it, when the server received it, and when
+ * the server relayed it. Each message from an origin also has a sequence
+ * number, so that losses and reordering can be seen.
+ * <p>
+ * Timestamps are in microseconds since the epoch, read from a clock that
+ * never goes backwards within a JVM. Comparing timestamps taken on
+ * different hosts assumes their clocks agree.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+public final class TracedMessage implements Serializable {
+	// CLASS VARIABLES **************************************************
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The time, in microseconds since the epoch, at which System.nanoTime()
+	 * would have read zero.
+	 */
+	private static final long EPOCH_OFFSET_MICROS = System.currentTimeMillis() * 1000 - System.nanoTime() / 1000;
+
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * The sender of the message.
+	 */
+	private final String origin;
+
+	/**
+	 * The number of the message among those from its origin.
+	 */
+	private final long sequence;
+
+	/**
+	 * The message itself.
+	 */
+	private final Object payload;
+
+	/**
+	 * When the origin sent the message.
+	 */
+	private final long sentTime;
+
+	/**
+	 * When the server received the message, zero until it is relayed.
+	 */
+	private final long serverReceivedTime;
+
+	/**
+	 * When the server relayed the message, zero until it is relayed.
+	 */
+	private final long serverSentTime;
+
+	// CONSTRUCTORS *****************************************************
+
+	/**
+	 * Constructs a message sent now.
+	 *
+	 * @param origin
+	 *            the sender of the message.
+	 * @param sequence
+	 *            the number of the message among those of the sender.
+	 * @param payload
+	 *            the message itself.
+	 */
+	public TracedMessage(String origin, long sequence, Object payload) {
+		this(origin, sequence, payload, now(), 0, 0);
+	}
+
+	/**
+	 * Constructs a message with all its timestamps, as it is decoded.
+	 */
+	TracedMessage(String origin, long sequence, Object payload, long sentTime, long serverReceivedTime,
+			long serverSentTime) {
+		this.origin = origin;
+		this.sequence = sequence;
+		this.payload = payload;
+		this.sentTime = sentTime;
+		this.serverReceivedTime = serverReceivedTime;
+		this.serverSentTime = serverSentTime;
+	}
+
+	// CLASS METHODS ****************************************************
+
+	/**
+	 * @return the current time, in microseconds since the epoch.
+	 */
+	public static long now() {
+		return EPOCH_OFFSET_MICROS + System.nanoTime() / 1000;
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * Returns the message the server relays, now, for this one. It keeps the
+	 * origin, sequence number and sending time of this message.
+	 *
+	 * @param relayedPayload
+	 *            the message relayed, such as this one's payload prefixed
+	 *            by the name of the sender.
+	 * @param receivedTime
+	 *            when the server received this message.
+	 * @return the message to relay.
+	 */
+	public TracedMessage relay(Object relayedPayload, long receivedTime) {
+		return new TracedMessage(origin, sequence, relayedPayload, sentTime, receivedTime, now());
+	}
+
+	public String getOrigin() {
+		return origin;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public Object getPayload() {
+		return payload;
+	}
+
+	public long getSentTime() {
+		return sentTime;
+	}
+
+	public long getServerReceivedTime() {
+		return serverReceivedTime;
+	}
+
+	public long getServerSentTime() {
+		return serverSentTime;
+	}
+
+	/**
+	 * @return the payload as a string, so that a traced message displays
+	 *         like the message it carries.
+	 */
+	public String toString() {
+		return String.valueOf(payload);
+	}
+}
+// End of TracedMessage class
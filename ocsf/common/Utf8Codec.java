@@ -0,0 +1,46 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compact codec for text-only protocols such as chat: a message is a
+ * string and its payload is nothing but its UTF-8 bytes. There are no class
+ * descriptors and no object graph, so nothing but strings can be received.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+public class Utf8Codec implements Codec {
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * Writes the UTF-8 bytes of a string.
+	 *
+	 * @exception NotSerializableException
+	 *                if the message is not a character sequence.
+	 */
+	public void encode(Object msg, OutputStream out) throws IOException {
+		if (!(msg instanceof CharSequence))
+			throw new NotSerializableException(msg == null ? "null" : msg.getClass().getName());
+
+		out.write(msg.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	public Object decode(ByteBuffer payload) throws IOException {
+		if (!payload.hasArray())
+			return StandardCharsets.UTF_8.decode(payload).toString();
+
+		String msg = new String(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(),
+				StandardCharsets.UTF_8);
+		payload.position(payload.limit());
+		return msg;
+	}
+}
+// End of Utf8Codec class
@@ -5,7 +5,28 @@ package ocsf.server;
 
 import java.net.*;
 import java.io.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.*;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import ocsf.common.AsyncLogger;
+import ocsf.common.Codec;
+import ocsf.common.FrameCompressor;
+import ocsf.common.ManagedObjectOutputStream;
+import ocsf.common.SerializationCodec;
+import ocsf.common.ThreadMode;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
 * The <code> AbstractServer </code> class maintains a thread that waits
@@ -15,6 +36,48 @@ import java.util.concurrent.ConcurrentHashMap;
 * server, the two programs can then exchange <code> Object </code>
 * instances.<p>
 *
+* The listening thread waits on a selector for connection attempts and is
+* woken up at once by <code> stopListening </code>; it accepts at most a
+* batch of connections per wakeup and never waits on a client. By default
+* every connection then runs its own thread, which opens the connection's
+* streams within the handshake timeout. When a number of event loop threads is set with
+* <code> setEventLoopThreads </code>, the server instead multiplexes all the
+* client channels over that small pool of threads. The hook methods are
+* called in both modes.<p>
+*
+* Messages travel on a continuous object stream, as in earlier versions,
+* unless a <code> Codec </code> is set with <code> setCodec </code>; they are
+* then exchanged as length-prefixed frames encoded by the codec, and clients
+* must use the same codec. The non-blocking mode always uses frames, with a
+* <code> SerializationCodec </code> if no codec is set. With frames, large
+* messages can be compressed for the clients that negotiate it; see
+* <code> setCompressionThreshold </code>.<p>
+*
+* In the default mode the reader of each connection is run by the connection
+* executor. Unless one is supplied with <code> setConnectionExecutor </code>,
+* each reader gets a new thread of the kind passed to <code> listen </code>:
+* platform threads by default, or virtual threads to hold a very large number
+* of mostly idle connections.<p>
+*
+* Messages are dispatched without any server-wide lock. The messages of one
+* client reach <code> handleMessageFromClient </code> one at a time and in the
+* order the client sent them, but messages from different clients are handled
+* concurrently, so the method must be thread-safe. Sending to a client is
+* thread-safe: concurrent sends to the same client are written one after the
+* other, never interleaved.<p>
+*
+* <code> sendToAllClients </code> does not write on the caller's thread. It
+* places the message in the bounded send queue of every client, from which
+* writer threads (or the event loops) write it out. A client whose queue is
+* full is handled according to the <code> SlowConsumerPolicy </code>, and the
+* number of queued and discarded messages is counted. When frames are used
+* the message is encoded once, and the same frame is written to every
+* client.<p>
+*
+* The server keeps <code> ServerMetrics </code> on its traffic, the time its
+* handlers take, and its connections and queues. They can be read with
+* <code> getMetrics </code> or published over JMX.<p>
+*
 * Method <code> handleMessageFromClient </code> must be defined by
 * a concrete subclass. Several other hook methods may also be
 * overriden.<p>
@@ -28,12 +91,25 @@ import java.util.concurrent.ConcurrentHashMap;
 * @author Dr Timothy C. Lethbridge
 * @author Fran&ccedil;ois B&eacute;langer
 * @author Paul Holden
-* @version September 2025 (2.14)
+* @version September 2025 (2.15)
 * @see ocsf.server.ConnectionToClient
 */
 
 public abstract class AbstractServer implements Runnable
 {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The log of the messages the server could not send.
+	 */
+	private static final AsyncLogger LOG = AsyncLogger.getLogger("ocsf.server");
+
+	/**
+	 * The number of recipients from which a broadcast frame is held in a
+	 * direct buffer.
+	 */
+	private static final int DIRECT_FRAME_RECIPIENTS = 8;
+
 	// INSTANCE VARIABLES *********************************************
 
 	/**
@@ -41,6 +117,214 @@ public abstract class AbstractServer implements Runnable
 	 */
 	private ServerSocket serverSocket = null;
 
+	/**
+	 * The channel of the server socket.
+	 */
+	private ServerSocketChannel serverChannel = null;
+
+	/**
+	 * The selector on which the listening thread waits for connections.
+	 */
+	private Selector acceptSelector = null;
+
+	/**
+	 * The number of event loop threads; zero selects one thread per client.
+	 */
+	private int eventLoopThreads = 0;
+
+	/**
+	 * The event loops servicing client channels in non-blocking mode.
+	 */
+	private EventLoop[] eventLoops = null;
+
+	/**
+	 * The codec selected by the application, or null for object streams.
+	 */
+	private Codec codec = null;
+
+	/**
+	 * The codec in use while listening, or null for object streams.
+	 */
+	private Codec wireCodec = null;
+
+	/**
+	 * The smallest payload compressed for the clients that negotiate
+	 * compression, or zero if it is disabled.
+	 */
+	private int compressionThreshold = 0;
+
+	/**
+	 * The compressor in use while listening, or null.
+	 */
+	private FrameCompressor frameCompressor = null;
+
+	/**
+	 * The number of messages after which an object stream is reset.
+	 */
+	private int resetMessages = ManagedObjectOutputStream.DEFAULT_RESET_MESSAGES;
+
+	/**
+	 * The number of bytes after which an object stream is reset.
+	 */
+	private long resetBytes = ManagedObjectOutputStream.DEFAULT_RESET_BYTES;
+
+	/**
+	 * Whether Nagle's algorithm is disabled on client sockets. The framework
+	 * coalesces its own writes, so it is disabled by default.
+	 */
+	private boolean tcpNoDelay = true;
+
+	/**
+	 * The socket send buffer size, zero for the system default.
+	 */
+	private int sendBufferSize = 0;
+
+	/**
+	 * The socket receive buffer size, zero for the system default.
+	 */
+	private int receiveBufferSize = 0;
+
+	/**
+	 * The size of the buffer in front of each blocking output stream.
+	 */
+	private int outputBufferSize = 8192;
+
+	/**
+	 * How long, in microseconds, a writer may hold written messages in the
+	 * buffer to coalesce them with later ones.
+	 */
+	private long flushDelay = 0;
+
+	/**
+	 * The kind of thread created for each connection reader.
+	 */
+	private ThreadMode threadMode = ThreadMode.PLATFORM;
+
+	/**
+	 * The executor supplied by the application to run connection readers, or
+	 * null to create threads of the selected kind.
+	 */
+	private Executor connectionExecutor = null;
+
+	/**
+	 * The executor running the connection readers while listening.
+	 */
+	private Executor readerExecutor = null;
+
+	/**
+	 * The executor running the writers that drain the send queues in
+	 * blocking mode.
+	 */
+	private ExecutorService writerExecutor = null;
+
+	/**
+	 * The number of threads handling messages apart from the readers, or
+	 * zero to handle them on the reader that decoded them.
+	 */
+	private int handlerThreads = 0;
+
+	/**
+	 * The capacity of the task queue of the handler threads the server
+	 * creates. Each task drains the inbound queue of one client.
+	 */
+	private int handlerQueueCapacity = 1024;
+
+	/**
+	 * The executor supplied by the application to run the handlers, or null
+	 * to create handler threads.
+	 */
+	private Executor handlerExecutorSetting = null;
+
+	/**
+	 * The executor running the handlers while listening, null if messages
+	 * are handled by the readers.
+	 */
+	private volatile Executor handlerExecutor = null;
+
+	/**
+	 * Clients whose handler task was rejected by the handler executor. Each
+	 * is submitted again when a running handler task completes.
+	 */
+	private final ConcurrentLinkedQueue<ConnectionToClient> rejectedHandlers =
+			new ConcurrentLinkedQueue<ConnectionToClient>();
+
+	/**
+	 * The capacity of the inbound queue of each new connection, when
+	 * messages are handled apart from the readers.
+	 */
+	private int inboundQueueCapacity = 256;
+
+	/**
+	 * The capacity of the send queue of each new connection.
+	 */
+	private int sendQueueCapacity = 1024;
+
+	/**
+	 * What happens to a message for a client whose send queue is full.
+	 */
+	private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_OLDEST;
+
+	/**
+	 * How long, in milliseconds, the BLOCK policy waits for room in a queue.
+	 */
+	private long sendTimeout = 5000;
+
+	/**
+	 * The sustained rate of messages allowed from each new client, zero for
+	 * no limit.
+	 */
+	private double clientRate = 0;
+
+	/**
+	 * The burst of messages allowed from each new client.
+	 */
+	private int clientBurst = 1;
+
+	/**
+	 * The limiter shared by all the clients, or null for no global limit.
+	 */
+	private volatile RateLimiter globalRateLimiter = null;
+
+	/**
+	 * What happens to a message over a rate limit.
+	 */
+	private volatile RateLimitAction rateLimitAction = RateLimitAction.DELAY;
+
+	/**
+	 * The number of messages placed in send queues.
+	 */
+	private final LongAdder queuedMessages = new LongAdder();
+
+	/**
+	 * The number of messages discarded because a send queue was full.
+	 */
+	private final LongAdder droppedMessages = new LongAdder();
+
+	/**
+	 * The number of clients disconnected by the DISCONNECT policy.
+	 */
+	private final LongAdder slowConsumerDisconnects = new LongAdder();
+
+	/**
+	 * The number of times a reader waited for room in an inbound queue.
+	 */
+	private final LongAdder readStalls = new LongAdder();
+
+	/**
+	 * The number of handler tasks rejected by the handler executor.
+	 */
+	private final LongAdder handlerRejections = new LongAdder();
+
+	/**
+	 * The number of times a message from a client was over a rate limit.
+	 */
+	private final LongAdder rateLimitedMessages = new LongAdder();
+
+	/**
+	 * The number of clients disconnected for going over a rate limit.
+	 */
+	private final LongAdder rateLimitDisconnects = new LongAdder();
+
 	/**
 	 * The connection listener thread.
 	 */
@@ -52,30 +336,48 @@ public abstract class AbstractServer implements Runnable
 	private int port;
 
 	/**
-	 * The server timeout while for accepting connections.
+	 * The maximum queue length. Large enough to absorb every client
+	 * reconnecting at once after a restart.
+	 */
+	private int backlog = 128;
+
+	/**
+	 * The maximum number of connections accepted per wakeup of the listening
+	 * thread.
+	 */
+	private int acceptBatch = 64;
+
+	/**
+	 * How long, in milliseconds, a new client has to send its stream header.
+	 */
+	private int handshakeTimeout = 10000;
+
+	/**
+	 * The metrics of this server.
 	 */
-	private int timeout = 500;
+	private final ServerMetrics metrics = new ServerMetrics(this);
 
 	/**
-	 * The maximum queue length.
+	 * The name under which the metrics are registered with the platform
+	 * MBean server, or null.
 	 */
-	private int backlog = 10;
+	private ObjectName metricsName = null;
 
 	/**
-	 * A thread-safe map of active client connections.
+	 * The active client connections, keyed by their IDs.
 	 */
-	private ConcurrentHashMap<Long, ConnectionToClient> clientConnections;
-	
+	private final ClientRegistry clientConnections = new ClientRegistry();
 
 	/**
-	 * Counter for assigning unique IDs to clients.
+	 * Counter for assigning unique IDs to clients. Only used by the listening
+	 * thread.
 	 */
 	private long clientIdCounter = 0;
 
 	/**
 	 * Indicates if the listening thread is ready to stop.
 	 */
-	private boolean readyToStop = false;
+	private volatile boolean readyToStop = false;
 
 
 	// CONSTRUCTOR ******************************************************
@@ -83,7 +385,6 @@ public abstract class AbstractServer implements Runnable
 	public AbstractServer(int port)
 	{
 		this.port = port;
-		this.clientConnections = new ConcurrentHashMap<>();
 	}
 
 
@@ -95,19 +396,51 @@ public abstract class AbstractServer implements Runnable
 		{
 			if (serverSocket == null)
 			{
-				serverSocket = new ServerSocket(getPort(), backlog);
+				openChannel();
 			}
 
-			serverSocket.setSoTimeout(timeout);
+			wireCodec = (codec == null && eventLoops != null) ? new SerializationCodec() : codec;
+			if (frameCompressor != null)
+			{
+				frameCompressor.close();
+			}
+			frameCompressor = (wireCodec == null || compressionThreshold == 0) ? null
+					: new FrameCompressor(compressionThreshold);
+			readerExecutor = createReaderExecutor();
+			if (writerExecutor == null)
+			{
+				writerExecutor = Executors.newCachedThreadPool(threadMode.newFactory("ocsf-writer-"));
+			}
+			if (handlerExecutor == null)
+			{
+				handlerExecutor = createHandlerExecutor();
+			}
 			readyToStop = false;
 			connectionListener = new Thread(this);
 			connectionListener.start();
 		}
 	}
 
+	/**
+	 * Starts listening with connection readers of the given kind. The kind
+	 * also applies to later calls to listen().
+	 */
+	final public void listen(ThreadMode threadMode) throws IOException
+	{
+		if (!threadMode.isSupported())
+			throw new UnsupportedOperationException(threadMode + " threads are not supported by this runtime");
+		this.threadMode = threadMode;
+		listen();
+	}
+
 	final public void stopListening()
 	{
 		readyToStop = true;
+
+		// Wake up the listening thread
+		Selector selector = acceptSelector;
+		if (selector != null)
+			selector.wakeup();
 	}
 
 	final synchronized public void close() throws IOException
@@ -122,7 +455,7 @@ public abstract class AbstractServer implements Runnable
 		finally
 		{
 			// Close the client sockets of the already connected clients
-			for (ConnectionToClient client : clientConnections.values())
+			for (ConnectionToClient client : clientConnections.snapshot())
 			{
 				try
 				{
@@ -131,21 +464,64 @@ public abstract class AbstractServer implements Runnable
 				catch(Exception ex) {}
 			}
 			clientConnections.clear();
+			closeChannel();
+			if (writerExecutor != null)
+			{
+				writerExecutor.shutdown();
+				writerExecutor = null;
+			}
+			if (handlerExecutor != null && handlerExecutor != handlerExecutorSetting)
+			{
+				((ExecutorService) handlerExecutor).shutdown();
+			}
+			handlerExecutor = null;
+			if (frameCompressor != null)
+			{
+				frameCompressor.close();
+			}
+			rejectedHandlers.clear();
 			serverSocket = null;
+			unregisterMetricsMBean();
 			serverClosed();
 		}
 	}
 
+	/**
+	 * Queues a message for every connected client and returns without
+	 * waiting for the writes.
+	 */
 	public void sendToAllClients(Object msg)
 	{
-		for (ConnectionToClient client : clientConnections.values())
+		long start = System.nanoTime();
+		ConnectionToClient[] clients = clientConnections.snapshot();
+		Object queued = encodeForBroadcast(msg, clients.length);
+		if (queued == null)
+			return;
+
+		for (ConnectionToClient client : clients)
 		{
-			try
-			{
-				client.sendToClient(msg);
-			}
-			catch (Exception ex) {}
+			client.sendToClientAsync(queued);
+		}
+		metrics.recordBroadcast(System.nanoTime() - start);
+	}
+
+	/**
+	 * Queues a message for each of the given clients, such as the members of
+	 * a chat room, and returns without waiting for the writes. The message is
+	 * encoded once for all of them, like a broadcast.
+	 */
+	public void sendToClients(Collection<ConnectionToClient> clients, Object msg)
+	{
+		long start = System.nanoTime();
+		Object queued = encodeForBroadcast(msg, clients.size());
+		if (queued == null)
+			return;
+
+		for (ConnectionToClient client : clients)
+		{
+			client.sendToClientAsync(queued);
 		}
+		metrics.recordBroadcast(System.nanoTime() - start);
 	}
 
 
@@ -156,9 +532,12 @@ public abstract class AbstractServer implements Runnable
 		return (connectionListener != null);
 	}
 
-	synchronized final public ConnectionToClient[] getClientConnections()
+	/**
+	 * Returns the connected clients, in a new array the caller may modify.
+	 */
+	final public ConnectionToClient[] getClientConnections()
 	{
-		return clientConnections.values().toArray(new ConnectionToClient[0]);
+		return clientConnections.snapshot().clone();
 	}
 
 	final public int getNumberOfClients()
@@ -176,93 +555,802 @@ public abstract class AbstractServer implements Runnable
 		this.port = port;
 	}
 
+	/**
+	 * Has no effect: the listening thread no longer polls, it is woken up
+	 * when connections arrive or when the server stops listening.
+	 *
+	 * @deprecated accepting does not time out any more.
+	 */
+	@Deprecated
 	final public void setTimeout(int timeout)
 	{
-		this.timeout = timeout;
 	}
 
+	/**
+	 * Sets the length of the queue of connections waiting to be accepted,
+	 * from the next time the server socket is opened.
+	 */
 	final public void setBacklog(int backlog)
 	{
 		this.backlog = backlog;
 	}
 
+	/**
+	 * Sets how long, in milliseconds, a client connecting in blocking mode has
+	 * to send its stream header before it is dropped. Zero waits forever.
+	 */
+	final public void setHandshakeTimeout(int handshakeTimeout)
+	{
+		if (handshakeTimeout < 0)
+			throw new IllegalArgumentException("negative handshake timeout");
+		this.handshakeTimeout = handshakeTimeout;
+	}
 
-	// RUN METHOD -------------------------------------------------------
-
-	final public void run()
+	final public int getHandshakeTimeout()
 	{
-		serverStarted();
+		return handshakeTimeout;
+	}
 
-		try
-		{
-			while(!readyToStop)
-			{
-				try
-				{
-					Socket clientSocket = serverSocket.accept();
+	/**
+	 * Sets the maximum number of connections accepted each time the
+	 * listening thread wakes up, before it checks whether to stop.
+	 */
+	final public void setAcceptBatch(int acceptBatch)
+	{
+		if (acceptBatch < 1)
+			throw new IllegalArgumentException("accept batch must be positive");
+		this.acceptBatch = acceptBatch;
+	}
 
-					synchronized(this)
-					{
-						ConnectionToClient client = new ConnectionToClient(clientSocket, this);
-						long id = ++clientIdCounter;
-						clientConnections.put(id, client);
-					}
-				}
-				catch (InterruptedIOException exception)
-				{
-					// timeout occurred
-				}
-			}
+	/**
+	 * Sets the number of event loop threads used from the next time the
+	 * server socket is opened. Zero, the default, gives each client its own
+	 * thread; a positive number selects the non-blocking mode.
+	 */
+	final public void setEventLoopThreads(int eventLoopThreads)
+	{
+		if (eventLoopThreads < 0)
+			throw new IllegalArgumentException("negative number of event loops");
+		this.eventLoopThreads = eventLoopThreads;
+	}
 
-			serverStopped();
-		}
-		catch (IOException exception)
-		{
-			if (!readyToStop)
-			{
-				listeningException(exception);
-			}
-			else
-			{
-				serverStopped();
-			}
-		}
-		finally
-		{
-			readyToStop = true;
-			connectionListener = null;
-		}
+	final public int getEventLoopThreads()
+	{
+		return eventLoopThreads;
 	}
 
+	/**
+	 * Sets the codec used from the next call to listen(), when the server
+	 * socket is opened. Null, the default, keeps the object streams in
+	 * blocking mode.
+	 */
+	final public void setCodec(Codec codec)
+	{
+		this.codec = codec;
+	}
 
-	// METHODS DESIGNED TO BE OVERRIDDEN --------------------------------
+	final public Codec getCodec()
+	{
+		return codec;
+	}
 
-	protected void clientConnected(ConnectionToClient client) {}
+	/**
+	 * Enables compression from the next call to listen(), for frames whose
+	 * payload has at least the given number of bytes. Only the clients that
+	 * offer it when they connect receive compressed frames, and only they
+	 * are told that they may send some. Compression needs frames, so it is
+	 * not used with object streams. Zero, the default, disables it.
+	 *
+	 * @param threshold
+	 *            the smallest payload compressed, in bytes, or zero.
+	 */
+	final public void setCompressionThreshold(int threshold)
+	{
+		if (threshold < 0)
+			throw new IllegalArgumentException("negative compression threshold");
+		this.compressionThreshold = threshold;
+	}
 
-	synchronized protected void clientDisconnected(ConnectionToClient client) {
-		// Since we don't track which ID belongs to this client directly,
-		// remove by value.
-		clientConnections.values().remove(client);
+	final public int getCompressionThreshold()
+	{
+		return compressionThreshold;
 	}
 
-	synchronized protected void clientException(ConnectionToClient client, Throwable exception) {}
+	/**
+	 * Sets how often the object stream of the clients that connect from now
+	 * on is reset, so that neither end retains every message sent. The stream
+	 * is reset after the given number of messages or bytes, whichever comes
+	 * first; zero removes that limit. Not used with a codec.
+	 */
+	final public void setStreamResetBudget(int resetMessages, long resetBytes)
+	{
+		if (resetMessages < 0 || resetBytes < 0)
+			throw new IllegalArgumentException("negative reset budget");
+		this.resetMessages = resetMessages;
+		this.resetBytes = resetBytes;
+	}
 
-	protected void listeningException(Throwable exception) {}
+	final public int getResetMessages()
+	{
+		return resetMessages;
+	}
 
-	protected void serverStarted() {}
+	final public long getResetBytes()
+	{
+		return resetBytes;
+	}
 
-	protected void serverStopped() {}
+	/**
+	 * Enables or disables Nagle's algorithm on the sockets of the clients
+	 * that connect from now on. Disabled by default.
+	 */
+	final public void setTcpNoDelay(boolean tcpNoDelay)
+	{
+		this.tcpNoDelay = tcpNoDelay;
+	}
+
+	/**
+	 * Sets the socket send and receive buffer sizes of the clients that
+	 * connect from now on; zero keeps the system default. The receive size
+	 * also applies to the server socket the next time it is opened.
+	 */
+	final public void setSocketBufferSizes(int sendBufferSize, int receiveBufferSize)
+	{
+		if (sendBufferSize < 0 || receiveBufferSize < 0)
+			throw new IllegalArgumentException("negative buffer size");
+		this.sendBufferSize = sendBufferSize;
+		this.receiveBufferSize = receiveBufferSize;
+	}
+
+	/**
+	 * Sets the size of the buffer through which messages are written to each
+	 * client in blocking mode. A buffer that fills up is flushed at once.
+	 */
+	final public void setOutputBufferSize(int outputBufferSize)
+	{
+		if (outputBufferSize < 1)
+			throw new IllegalArgumentException("output buffer size must be positive");
+		this.outputBufferSize = outputBufferSize;
+	}
+
+	final public int getOutputBufferSize()
+	{
+		return outputBufferSize;
+	}
+
+	/**
+	 * Sets how long, in microseconds, a writer may keep queued messages in
+	 * the output buffer waiting for more before flushing, in blocking mode.
+	 * Zero, the default, flushes as soon as the send queue is empty: the
+	 * lowest latency. A larger delay sends fewer, fuller packets.
+	 */
+	final public void setFlushDelay(long flushDelay)
+	{
+		if (flushDelay < 0)
+			throw new IllegalArgumentException("negative flush delay");
+		this.flushDelay = flushDelay;
+	}
+
+	final public long getFlushDelay()
+	{
+		return flushDelay;
+	}
+
+	final public ThreadMode getThreadMode()
+	{
+		return threadMode;
+	}
+
+	/**
+	 * Sets the number of threads that handle messages from the next call to
+	 * listen(). With zero, the default, a message is handled by the reader
+	 * that decoded it, so a slow handler holds back the reading of its
+	 * client. Otherwise each connection decodes into a bounded inbound queue,
+	 * and a handler thread drains it, in order, while the reader goes on
+	 * decoding. A reader that finds the queue full waits for room, which in
+	 * turn stops the client through TCP flow control. See also
+	 * setHandlerExecutor.
+	 */
+	final public void setHandlerThreads(int handlerThreads)
+	{
+		if (handlerThreads < 0)
+			throw new IllegalArgumentException("handler threads must not be negative");
+		this.handlerThreads = handlerThreads;
+	}
+
+	final public int getHandlerThreads()
+	{
+		return handlerThreads;
+	}
+
+	/**
+	 * Sets the capacity of the task queue of the handler threads created
+	 * from the next call to listen(). A client waiting to be handled takes
+	 * one task. When the queue is full, the client waits for a running task
+	 * to complete instead, and its reader stops once its inbound queue
+	 * fills up, so a burst from a few clients cannot take over the handlers.
+	 */
+	final public void setHandlerQueueCapacity(int handlerQueueCapacity)
+	{
+		if (handlerQueueCapacity < 1)
+			throw new IllegalArgumentException("handler queue capacity must be positive");
+		this.handlerQueueCapacity = handlerQueueCapacity;
+	}
+
+	final public int getHandlerQueueCapacity()
+	{
+		return handlerQueueCapacity;
+	}
+
+	/**
+	 * Sets the executor that runs handleMessageFromClient from the next call
+	 * to listen(), in place of the handler threads. The tasks of one client
+	 * never run at the same time, so its messages are handled in order. A
+	 * task the executor rejects is submitted again once another completes;
+	 * meanwhile the client's inbound queue fills up and its reader stops.
+	 * Null restores the default, the handler threads if there are any.
+	 */
+	final public void setHandlerExecutor(Executor handlerExecutor)
+	{
+		this.handlerExecutorSetting = handlerExecutor;
+	}
+
+	/**
+	 * Sets the capacity of the inbound queue of the clients that connect
+	 * from now on. Only used with handler threads.
+	 */
+	final public void setInboundQueueCapacity(int inboundQueueCapacity)
+	{
+		if (inboundQueueCapacity < 1)
+			throw new IllegalArgumentException("inbound queue capacity must be positive");
+		this.inboundQueueCapacity = inboundQueueCapacity;
+	}
+
+	final public int getInboundQueueCapacity()
+	{
+		return inboundQueueCapacity;
+	}
+
+	/**
+	 * Limits the rate of messages from each client that connects from now
+	 * on, before they are handled. The limit is a token bucket: a client may
+	 * send up to burst messages at once, and the given number of messages
+	 * per second in the long run. A rate of zero removes the limit.
+	 */
+	final public void setClientRateLimit(double messagesPerSecond, int burst)
+	{
+		if (messagesPerSecond < 0 || burst < 1)
+			throw new IllegalArgumentException("invalid rate limit");
+		this.clientRate = messagesPerSecond;
+		this.clientBurst = burst;
+	}
+
+	/**
+	 * Limits the rate of messages from all the clients together, like
+	 * setClientRateLimit does for each of them. Takes effect at once. A rate
+	 * of zero removes the limit.
+	 */
+	final public void setGlobalRateLimit(double messagesPerSecond, int burst)
+	{
+		if (messagesPerSecond < 0 || burst < 1)
+			throw new IllegalArgumentException("invalid rate limit");
+		this.globalRateLimiter = messagesPerSecond == 0 ? null : new RateLimiter(messagesPerSecond, burst);
+	}
+
+	final public void setRateLimitAction(RateLimitAction rateLimitAction)
+	{
+		this.rateLimitAction = rateLimitAction;
+	}
+
+	final public RateLimitAction getRateLimitAction()
+	{
+		return rateLimitAction;
+	}
+
+	/**
+	 * Sets the capacity of the send queue of the clients that connect from
+	 * now on.
+	 */
+	final public void setSendQueueCapacity(int sendQueueCapacity)
+	{
+		if (sendQueueCapacity < 1)
+			throw new IllegalArgumentException("send queue capacity must be positive");
+		this.sendQueueCapacity = sendQueueCapacity;
+	}
+
+	final public int getSendQueueCapacity()
+	{
+		return sendQueueCapacity;
+	}
+
+	/**
+	 * Sets what happens to a message for a client whose send queue is full.
+	 * DROP_OLDEST, the default, never makes the sender wait.
+	 */
+	final public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy)
+	{
+		this.slowConsumerPolicy = slowConsumerPolicy;
+	}
+
+	final public SlowConsumerPolicy getSlowConsumerPolicy()
+	{
+		return slowConsumerPolicy;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, the BLOCK policy waits for room in a
+	 * full send queue before discarding the message.
+	 */
+	final public void setSendTimeout(long sendTimeout)
+	{
+		this.sendTimeout = sendTimeout;
+	}
+
+	final public long getSendTimeout()
+	{
+		return sendTimeout;
+	}
+
+	/**
+	 * @return the number of messages placed in send queues.
+	 */
+	final public long getQueuedMessageCount()
+	{
+		return queuedMessages.sum();
+	}
+
+	/**
+	 * @return the number of messages discarded because a send queue was full.
+	 */
+	final public long getDroppedMessageCount()
+	{
+		return droppedMessages.sum();
+	}
+
+	/**
+	 * @return the number of clients disconnected for not reading fast enough.
+	 */
+	final public long getSlowConsumerDisconnectCount()
+	{
+		return slowConsumerDisconnects.sum();
+	}
+
+	/**
+	 * @return the number of times a reader had to wait for a handler to
+	 *         make room in an inbound queue.
+	 */
+	final public long getReadStallCount()
+	{
+		return readStalls.sum();
+	}
+
+	/**
+	 * @return the metrics of this server.
+	 */
+	final public ServerMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Publishes the metrics of this server on the platform MBean server,
+	 * under the name ocsf.server:type=ServerMetrics,port=<i>port</i>, until
+	 * the server is closed.
+	 *
+	 * @return the name of the MBean.
+	 * @exception JMException
+	 *                if the MBean cannot be registered.
+	 */
+	final synchronized public ObjectName registerMetricsMBean() throws JMException
+	{
+		if (metricsName == null)
+		{
+			ObjectName name = new ObjectName("ocsf.server:type=ServerMetrics,port=" + port);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+			metricsName = name;
+		}
+		return metricsName;
+	}
+
+	/**
+	 * @return the number of times a message from a client was over a rate
+	 *         limit, whatever the action taken.
+	 */
+	final public long getRateLimitedCount()
+	{
+		return rateLimitedMessages.sum();
+	}
+
+	/**
+	 * @return the number of clients disconnected for going over a rate
+	 *         limit.
+	 */
+	final public long getRateLimitDisconnectCount()
+	{
+		return rateLimitDisconnects.sum();
+	}
+
+	/**
+	 * @return the number of times the handler executor rejected the handling
+	 *         of a client.
+	 */
+	final public long getHandlerRejectionCount()
+	{
+		return handlerRejections.sum();
+	}
+
+	/**
+	 * @return the number of messages decoded but not yet handled, over all
+	 *         the clients.
+	 */
+	final public int getInboundQueueDepth()
+	{
+		int depth = 0;
+		for (ConnectionToClient client : clientConnections.snapshot())
+			depth += client.getInboundQueueDepth();
+		return depth;
+	}
+
+	/**
+	 * @return the number of messages queued but not yet written, over all
+	 *         the clients.
+	 */
+	final public int getSendQueueDepth()
+	{
+		int depth = 0;
+		for (ConnectionToClient client : clientConnections.snapshot())
+			depth += client.getSendQueueDepth();
+		return depth;
+	}
+
+	/**
+	 * Sets the executor that runs the reader of each connection from the
+	 * next call to listen(). The executor must be able to run as many readers
+	 * at once as there are clients. Null restores the default, one thread of
+	 * the selected kind per connection.
+	 */
+	final public void setConnectionExecutor(Executor connectionExecutor)
+	{
+		this.connectionExecutor = connectionExecutor;
+	}
+
+
+	// RUN METHOD -------------------------------------------------------
+
+	final public void run()
+	{
+		serverStarted();
+
+		try
+		{
+			acceptConnections();
+			serverStopped();
+		}
+		catch (IOException exception)
+		{
+			if (!readyToStop)
+			{
+				listeningException(exception);
+			}
+			else
+			{
+				serverStopped();
+			}
+		}
+		finally
+		{
+			readyToStop = true;
+			connectionListener = null;
+		}
+	}
+
+
+	private void acceptConnections() throws IOException
+	{
+		Selector selector = acceptSelector;
+		ServerSocketChannel server = serverChannel;
+		EventLoop[] loops = eventLoops;
+
+		try
+		{
+			while(!readyToStop)
+			{
+				// Wait for connections, or for stopListening() to wake us up
+				selector.select();
+				selector.selectedKeys().clear();
+
+				// Nothing here waits for the client: the stream handshake of
+				// a blocking connection is done by its reader
+				SocketChannel channel;
+				for (int accepted = 0; accepted < acceptBatch && !readyToStop
+					&& (channel = server.accept()) != null; accepted++)
+				{
+					long id = ++clientIdCounter;
+					try
+					{
+						ConnectionToClient client;
+						if (loops != null)
+						{
+							client = new ConnectionToClient(id, channel, loops[(int)(id % loops.length)], this);
+						}
+						else
+						{
+							channel.configureBlocking(true);
+							client = new ConnectionToClient(id, channel.socket(), this);
+						}
+						clientConnections.add(client);
+						metrics.countConnection();
+						client.start();
+					}
+					catch (IOException exception)
+					{
+						channel.close();
+					}
+				}
+			}
+		}
+		catch (ClosedSelectorException exception)
+		{
+			// the server was closed while waiting
+		}
+	}
+
+
+	// METHODS DESIGNED TO BE OVERRIDDEN --------------------------------
+
+	protected void clientConnected(ConnectionToClient client) {}
+
+	protected void clientDisconnected(ConnectionToClient client) {}
+
+	protected void clientException(ConnectionToClient client, Throwable exception) {}
+
+	protected void listeningException(Throwable exception) {}
+
+	protected void serverStarted() {}
+
+	protected void serverStopped() {}
 
 	protected void serverClosed() {}
 
+	/**
+	 * Handles a message from a client. Called concurrently for different
+	 * clients, and in arrival order for any one client.
+	 */
 	protected abstract void handleMessageFromClient(Object msg, ConnectionToClient client);
 
 
 	// METHODS TO BE USED FROM WITHIN THE FRAMEWORK ONLY ----------------
 
-	final synchronized void receiveMessageFromClient(Object msg, ConnectionToClient client)
+	final void receiveMessageFromClient(Object msg, ConnectionToClient client)
 	{
+		long start = System.nanoTime();
 		this.handleMessageFromClient(msg, client);
+		metrics.recordMessageIn(System.nanoTime() - start);
+	}
+
+	/**
+	 * Forgets a connection that is closed, before any hook is called.
+	 */
+	final void removeClient(ConnectionToClient client)
+	{
+		clientConnections.remove(client);
+	}
+
+	final void configureSocket(Socket socket) throws IOException
+	{
+		socket.setTcpNoDelay(tcpNoDelay);
+		if (sendBufferSize > 0)
+			socket.setSendBufferSize(sendBufferSize);
+		if (receiveBufferSize > 0)
+			socket.setReceiveBufferSize(receiveBufferSize);
+	}
+
+	/**
+	 * Returns what to queue for each recipient of a broadcast: the message
+	 * itself with object streams, otherwise a frame shared by all of them.
+	 * Null, once the failure is logged, if the message cannot be encoded.
+	 */
+	private Object encodeForBroadcast(Object msg, int recipients)
+	{
+		Codec frameCodec = wireCodec;
+		if (frameCodec == null)
+			return msg;
+
+		try
+		{
+			boolean direct = eventLoops != null && recipients >= DIRECT_FRAME_RECIPIENTS;
+			return SharedFrame.encode(msg, frameCodec, direct, frameCompressor);
+		}
+		catch (IOException ex)
+		{
+			LOG.warn("Message to {} clients not sent: {}", recipients, ex);
+			return null;
+		}
+	}
+
+	final Codec getWireCodec()
+	{
+		return wireCodec;
+	}
+
+	final FrameCompressor getFrameCompressor()
+	{
+		return frameCompressor;
+	}
+
+	final Executor getReaderExecutor()
+	{
+		return readerExecutor;
+	}
+
+	final Executor getWriterExecutor()
+	{
+		return writerExecutor;
+	}
+
+	final Executor getHandlerExecutor()
+	{
+		return handlerExecutor;
+	}
+
+	final void countQueuedMessage()
+	{
+		queuedMessages.increment();
+	}
+
+	final void countDroppedMessage()
+	{
+		droppedMessages.increment();
+	}
+
+	final void countSlowConsumerDisconnect()
+	{
+		slowConsumerDisconnects.increment();
+	}
+
+	final void countReadStall()
+	{
+		readStalls.increment();
+	}
+
+	/**
+	 * @return a limiter for a new client, or null if clients have no limit.
+	 */
+	final RateLimiter newClientRateLimiter()
+	{
+		return clientRate == 0 ? null : new RateLimiter(clientRate, clientBurst);
+	}
+
+	/**
+	 * @return the limiter shared by all the clients, or null.
+	 */
+	final RateLimiter getGlobalRateLimiter()
+	{
+		return globalRateLimiter;
+	}
+
+	final void countRateLimited()
+	{
+		rateLimitedMessages.increment();
+	}
+
+	final void countRateLimitDisconnect()
+	{
+		rateLimitDisconnects.increment();
+	}
+
+	/**
+	 * Remembers a client whose handler task was rejected, unless the
+	 * server is closing.
+	 *
+	 * @return true if the task will be submitted again.
+	 */
+	final boolean handlerRejected(ConnectionToClient client, Executor executor)
+	{
+		if (executor != handlerExecutor)
+			return false;
+
+		handlerRejections.increment();
+		rejectedHandlers.add(client);
+		return true;
+	}
+
+	/**
+	 * Submits again the oldest rejected handler task, if any. Called when
+	 * a handler task completes, which frees a place in the executor.
+	 */
+	final void retryRejectedHandler()
+	{
+		ConnectionToClient client = rejectedHandlers.poll();
+		if (client != null)
+			client.submitHandler();
+	}
+
+	private Executor createReaderExecutor()
+	{
+		if (connectionExecutor != null)
+			return connectionExecutor;
+
+		ThreadFactory factory = threadMode.newFactory("ocsf-connection-");
+		return task -> factory.newThread(task).start();
+	}
+
+	private synchronized void unregisterMetricsMBean()
+	{
+		if (metricsName == null)
+			return;
+
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+		}
+		catch (JMException ex) {}
+		metricsName = null;
+	}
+
+	private Executor createHandlerExecutor()
+	{
+		if (handlerExecutorSetting != null)
+			return handlerExecutorSetting;
+		if (handlerThreads == 0)
+			return null;
+
+		return new ThreadPoolExecutor(handlerThreads, handlerThreads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(handlerQueueCapacity), threadMode.newFactory("ocsf-handler-"));
+	}
+
+	private void openChannel() throws IOException
+	{
+		serverChannel = ServerSocketChannel.open();
+		try
+		{
+			if (receiveBufferSize > 0)
+				serverChannel.socket().setReceiveBufferSize(receiveBufferSize);
+			serverChannel.bind(new InetSocketAddress(getPort()), backlog);
+			serverChannel.configureBlocking(false);
+			acceptSelector = Selector.open();
+			serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+			if (eventLoopThreads > 0)
+			{
+				eventLoops = new EventLoop[eventLoopThreads];
+				for (int i = 0; i < eventLoops.length; i++)
+				{
+					eventLoops[i] = new EventLoop(this, "ocsf-event-loop-" + i);
+					eventLoops[i].start();
+				}
+			}
+		}
+		catch (IOException ex)
+		{
+			closeChannel();
+			serverChannel = null;
+			throw ex;
+		}
+		serverSocket = serverChannel.socket();
+	}
+
+	private void closeChannel()
+	{
+		if (eventLoops != null)
+		{
+			for (EventLoop loop : eventLoops)
+			{
+				if (loop != null)
+					loop.shutdown();
+			}
+			eventLoops = null;
+		}
+		try
+		{
+			if (acceptSelector != null)
+				acceptSelector.close();
+			if (serverChannel != null)
+				serverChannel.close();
+		}
+		catch (IOException ex) {}
+		acceptSelector = null;
+		serverChannel = null;
 	}
 }
 // End of AbstractServer Class
@@ -0,0 +1,129 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The set of connections of a server, keyed by the id each connection
+ * carries, so that adding and removing a connection are constant-time and
+ * lock-free.
+ * <p>
+ * Broadcasts iterate over a snapshot array rather than over the map. The
+ * snapshot is rebuilt lazily, by the first reader after a change, so that a
+ * burst of connections or disconnections costs a single rebuild, and a
+ * broadcast between two changes allocates nothing.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+final class ClientRegistry {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The snapshot of an empty registry.
+	 */
+	private static final ConnectionToClient[] NO_CLIENTS = new ConnectionToClient[0];
+
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * The connections, by id.
+	 */
+	private final ConcurrentHashMap<Long, ConnectionToClient> connections = new ConcurrentHashMap<Long, ConnectionToClient>();
+
+	/**
+	 * Incremented after every change of the map.
+	 */
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * The latest snapshot, tagged with the version it reflects.
+	 */
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>(new Snapshot(0, NO_CLIENTS));
+
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * Adds a connection.
+	 *
+	 * @param client
+	 *            the connection to add.
+	 */
+	void add(ConnectionToClient client) {
+		connections.put(client.getId(), client);
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Removes a connection.
+	 *
+	 * @param client
+	 *            the connection to remove.
+	 * @return true if the connection was present.
+	 */
+	boolean remove(ConnectionToClient client) {
+		if (!connections.remove(client.getId(), client))
+			return false;
+		version.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Removes every connection.
+	 */
+	void clear() {
+		connections.clear();
+		version.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of connections.
+	 */
+	int size() {
+		return connections.size();
+	}
+
+	/**
+	 * Returns the current connections. The array is shared and must not be
+	 * modified.
+	 *
+	 * @return the connections, as of the last change.
+	 */
+	ConnectionToClient[] snapshot() {
+		Snapshot current = snapshot.get();
+		long latest = version.get();
+		while (current.version != latest) {
+			// The map is read after the version, so it holds every change
+			// counted in that version
+			Snapshot fresh = new Snapshot(latest, connections.values().toArray(NO_CLIENTS));
+			if (snapshot.compareAndSet(current, fresh))
+				return fresh.clients;
+
+			current = snapshot.get();
+			latest = version.get();
+		}
+		return current.clients;
+	}
+
+	// INNER CLASSES ****************************************************
+
+	/**
+	 * An immutable array of connections and the version it reflects.
+	 */
+	private static final class Snapshot {
+		final long version;
+		final ConnectionToClient[] clients;
+
+		Snapshot(long version, ConnectionToClient[] clients) {
+			this.version = version;
+			this.clients = clients;
+		}
+	}
+}
+// End of ClientRegistry class
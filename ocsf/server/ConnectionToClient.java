@@ -5,7 +5,27 @@ package ocsf.server;
 
 import java.io.*;
 import java.net.*;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ocsf.common.AsyncLogger;
+import ocsf.common.Codec;
+import ocsf.common.FrameCompressor;
+import ocsf.common.Frames;
+import ocsf.common.ManagedObjectOutputStream;
 
 /**
  * An instance of this class is created by the server when a client connects. It
@@ -14,6 +34,37 @@ import java.util.HashMap;
  * contains a set of instances of this class and is responsible for adding and
  * deleting them.
  * <p>
+ * A connection either owns a reader thread that blocks on the socket's
+ * streams, or, when the server runs in non-blocking mode, is serviced by one
+ * of the server's event loops. Messages travel on a continuous object stream,
+ * or as length-prefixed frames when the server has a <code> Codec </code>,
+ * which the non-blocking mode always has.
+ * <p>
+ * Messages sent asynchronously, such as broadcasts, wait in a bounded send
+ * queue. In blocking mode a writer thread of the server drains the queue; in
+ * non-blocking mode the event loop does so whenever the channel is writable.
+ * When the queue is full the server's <code> SlowConsumerPolicy </code>
+ * decides what happens, so that a client that stops reading cannot hold back
+ * the others.
+ * <p>
+ * In blocking mode, writes go through a buffer. The writer flushes it when
+ * the send queue runs empty, when it fills up, or once the server's flush
+ * delay has passed since the first unflushed message, whichever comes first.
+ * A longer delay coalesces more messages per packet at the expense of
+ * latency. Messages sent synchronously are flushed at once. In non-blocking
+ * mode, queued frames are coalesced by the gathering writes of the event
+ * loop instead.
+ * <p>
+ * When the server has handler threads, the reader or event loop only
+ * decodes: messages wait in a bounded inbound queue, which a handler thread
+ * drains in order. A blocking reader that finds the queue full waits for
+ * room; an event loop stops reading the channel until there is room again.
+ * <p>
+ * Messages over the server's rate limits are dropped, delayed or cause the
+ * client to be disconnected before they are handled, as the server's
+ * <code> RateLimitAction </code> says. A delay stops the reading, like a full
+ * inbound queue does.
+ * <p>
  * Project Name: OCSF (Object Client-Server Framework)
  * <p>
  * 
@@ -23,7 +74,37 @@ import java.util.HashMap;
  * @author Paul Holden
  * @version September 2025 (2.15)
  */
-public class ConnectionToClient extends Thread {
+public class ConnectionToClient implements Runnable {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The initial size of the read buffer of a non-blocking connection. The
+	 * buffer grows when a larger frame arrives.
+	 */
+	private static final int INITIAL_READ_BUFFER = 8 * 1024;
+
+	/**
+	 * The largest number of frames passed to one gathering write.
+	 */
+	private static final int MAX_WRITE_BATCH = 16;
+
+	/**
+	 * The largest number of messages handled in a row before the handler
+	 * thread is given to other clients.
+	 */
+	private static final int MAX_HANDLER_BATCH = 64;
+
+	/**
+	 * Queued after the last message to send, to close the connection once
+	 * the messages before it are written.
+	 */
+	private static final Object CLOSE = new Object();
+
+	/**
+	 * The log of the connections closed by the server's policies.
+	 */
+	private static final AsyncLogger LOG = AsyncLogger.getLogger("ocsf.server");
+
 	// INSTANCE VARIABLES ***********************************************
 
 	/**
@@ -31,6 +112,11 @@ public class ConnectionToClient extends Thread {
 	 */
 	private AbstractServer server;
 
+	/**
+	 * The ID under which the server registered this connection.
+	 */
+	private final long id;
+
 	/**
 	 * Sockets are used in the operating system as channels of communication
 	 * between two processes.
@@ -45,29 +131,202 @@ public class ConnectionToClient extends Thread {
 	private ObjectInputStream input;
 
 	/**
-	 * Stream used to write to the client.
+	 * Stream used to write to the client. Reset on the server's budget.
 	 */
-	private ObjectOutputStream output;
+	private ManagedObjectOutputStream output;
+
+	/**
+	 * Stream used to read frames from the client when a codec is used.
+	 */
+	private DataInputStream frameInput;
+
+	/**
+	 * Stream used to write frames to the client when a codec is used.
+	 */
+	private DataOutputStream frameOutput;
+
+	/**
+	 * The codec of the frames, or null to use object streams.
+	 */
+	private final Codec codec;
+
+	/**
+	 * Serializes the writes of concurrent senders on the output stream.
+	 */
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	/**
+	 * Set once the streams of a blocking connection are open. Until then the
+	 * send queue is not drained.
+	 */
+	private volatile boolean handshakeDone;
 
 	/**
 	 * Indicates if the thread is ready to stop. Set to true when closing of the
 	 * connection is initiated.
 	 */
-	private boolean readyToStop;
+	private volatile boolean readyToStop;
+
+	/**
+	 * Set by whichever path closes the connection first, so that the server
+	 * is told of the close only once.
+	 */
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	/**
+	 * The channel of a non-blocking connection, null in blocking mode.
+	 */
+	private SocketChannel channel;
+
+	/**
+	 * The event loop servicing a non-blocking connection.
+	 */
+	private EventLoop eventLoop;
+
+	/**
+	 * The registration of the channel with its event loop.
+	 */
+	private SelectionKey key;
+
+	/**
+	 * Set once the writer of a non-blocking connection has taken the close
+	 * marker from the send queue. Only used by the loop thread.
+	 */
+	private boolean closePending;
+
+	/**
+	 * Bytes read from the channel but not yet decoded.
+	 */
+	private ByteBuffer readBuffer;
+
+	/**
+	 * The server's compressor, or null if compression is disabled.
+	 */
+	private final FrameCompressor compressor;
+
+	/**
+	 * Indicates if the client announced it can inflate compressed frames.
+	 */
+	private volatile boolean clientInflates;
+
+	/**
+	 * The frames being written to the channel with one gathering write. Those
+	 * the channel could not take wait here for it to become writable.
+	 */
+	private ByteBuffer[] writeBatch;
+
+	/**
+	 * The number of frames in the write batch.
+	 */
+	private int batchSize;
+
+	/**
+	 * Set while a flush of the pending writes is queued on the event loop.
+	 */
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	/**
+	 * Set while the write batch holds frames the channel has not taken.
+	 */
+	private boolean writePending;
+
+	/**
+	 * Set while the event loop does not read the channel because the
+	 * inbound queue is full.
+	 */
+	private volatile boolean readPaused;
+
+	/**
+	 * The message decoded by the event loop that did not fit in the inbound
+	 * queue.
+	 */
+	private Object pendingInbound;
+
+	/**
+	 * Set while the event loop does not read the channel because a message
+	 * is over a rate limit.
+	 */
+	private boolean rateDelayed;
+
+	/**
+	 * The limiter of the messages from this client, or null if there is no
+	 * limit.
+	 */
+	private final RateLimiter rateLimiter;
+
+	/**
+	 * Set while resuming the reads is queued on the event loop.
+	 */
+	private final AtomicBoolean resumeScheduled = new AtomicBoolean();
+
+	/**
+	 * The executor of the server's handler threads, or null to handle
+	 * messages on the reader.
+	 */
+	private final Executor handlerExecutor;
+
+	/**
+	 * Messages decoded but not yet handled, null without handler threads.
+	 */
+	private final BlockingQueue<Object> inboundQueue;
+
+	/**
+	 * Set while a handler thread is draining the inbound queue.
+	 */
+	private final AtomicBoolean handlerScheduled = new AtomicBoolean();
+
+	/**
+	 * Messages waiting to be written to the client.
+	 */
+	private final BlockingQueue<Object> sendQueue;
+
+	/**
+	 * Set while a writer thread is draining the send queue.
+	 */
+	private final AtomicBoolean writerScheduled = new AtomicBoolean();
+
+	/**
+	 * Set once the connection is to be closed when its send queue is
+	 * written. No message is queued after that.
+	 */
+	private volatile boolean closing;
+
+	/**
+	 * The number of messages to this client discarded because its send queue
+	 * was full.
+	 */
+	private final AtomicLong droppedMessages = new AtomicLong();
 
 	/**
 	 * Map to save information about the client such as its login ID. The
 	 * initial size of the map is small since it is not expected that concrete
 	 * servers will want to store many different types of information about each
-	 * client. Used by the setInfo and getInfo methods.
+	 * client. Used by the setInfo and getInfo methods. Concurrent, since the
+	 * reader and other threads may use it at the same time.
 	 */
-	private HashMap<String, Object> savedInfo	= new HashMap <String, Object>	(10);
+	private final Map<String, Object> savedInfo = new ConcurrentHashMap<String, Object>(8);
+
+	/**
+	 * The session attributes, by <code> SessionKey </code> slot. Sized for
+	 * the keys that exist when the connection is made, and replaced by a
+	 * larger copy if a newer key is set.
+	 */
+	private volatile AtomicReferenceArray<Object> attributes = new AtomicReferenceArray<Object>(SessionKey.count());
+
+	/**
+	 * Held while the attributes are copied into a larger array.
+	 */
+	private final Object attributesLock = new Object();
 
 	// CONSTRUCTORS *****************************************************
 
 	/**
-	 * Constructs a new connection to a client.
+	 * Constructs a new connection to a client. The streams are opened by the
+	 * reader, not by the caller, since opening an object stream waits for the
+	 * client to send its stream header.
 	 * 
+	 * @param id
+	 *            the ID of the connection, unique within the server.
 	 * @param clientSocket
 	 *            contains the client's socket.
 	 * @param server
@@ -75,16 +334,21 @@ public class ConnectionToClient extends Thread {
 	 * @exception IOException
 	 *                if an I/O error occur when creating the connection.
 	 */
-	ConnectionToClient(Socket clientSocket, AbstractServer server) throws IOException {
+	ConnectionToClient(long id, Socket clientSocket, AbstractServer server) throws IOException {
 		// Initialize variables
+		this.id = id;
 		this.clientSocket = clientSocket;
 		this.server = server;
+		this.codec = server.getWireCodec();
+		this.sendQueue = new ArrayBlockingQueue<Object>(server.getSendQueueCapacity());
+		this.handlerExecutor = server.getHandlerExecutor();
+		this.inboundQueue = handlerExecutor == null ? null
+				: new ArrayBlockingQueue<Object>(server.getInboundQueueCapacity());
+		this.rateLimiter = server.newClientRateLimiter();
+		this.compressor = server.getFrameCompressor();
 
-
-		// Initialize the objects streams
 		try {
-			input = new ObjectInputStream(clientSocket.getInputStream());
-			output = new ObjectOutputStream(clientSocket.getOutputStream());
+			server.configureSocket(clientSocket);
 		} catch (IOException ex) {
 			try {
 				closeAll();
@@ -95,26 +359,176 @@ public class ConnectionToClient extends Thread {
 		}
 
 		readyToStop = false;
-		start(); // Start the thread waits for data from the socket
+	}
+
+	/**
+	 * Constructs a new non-blocking connection to a client.
+	 * 
+	 * @param id
+	 *            the ID of the connection, unique within the server.
+	 * @param channel
+	 *            the client's channel.
+	 * @param eventLoop
+	 *            the event loop that will service the channel.
+	 * @param server
+	 *            a reference to the server that created this instance
+	 * @exception IOException
+	 *                if the channel cannot be made non-blocking.
+	 */
+	ConnectionToClient(long id, SocketChannel channel, EventLoop eventLoop, AbstractServer server) throws IOException {
+		this.id = id;
+		this.channel = channel;
+		this.clientSocket = channel.socket();
+		this.eventLoop = eventLoop;
+		this.server = server;
+		this.codec = server.getWireCodec();
+		this.sendQueue = new ArrayBlockingQueue<Object>(server.getSendQueueCapacity());
+		this.handlerExecutor = server.getHandlerExecutor();
+		this.inboundQueue = handlerExecutor == null ? null
+				: new ArrayBlockingQueue<Object>(server.getInboundQueueCapacity());
+		this.rateLimiter = server.newClientRateLimiter();
+		this.compressor = server.getFrameCompressor();
+
+		channel.configureBlocking(false);
+		server.configureSocket(clientSocket);
+		readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+		writeBatch = new ByteBuffer[MAX_WRITE_BATCH];
+		handshakeDone = true;
+		readyToStop = false;
 	}
 
 	// INSTANCE METHODS *************************************************
 
 	/**
-	 * Sends an object to the client.
+	 * Starts servicing the connection once the server has registered it: the
+	 * reader opens the streams and waits for data, or the event loop starts
+	 * watching the channel.
+	 */
+	void start() {
+		if (channel != null)
+			eventLoop.register(this);
+		else
+			server.getReaderExecutor().execute(this);
+	}
+
+	/**
+	 * Sends an object to the client. May be called from any thread; messages
+	 * sent by one thread reach the client in order. In blocking mode the
+	 * message is written before this call returns, possibly ahead of messages
+	 * waiting in the send queue. In non-blocking mode it is queued like an
+	 * asynchronous send. Once closeWhenFlushed() is called, messages are
+	 * discarded.
 	 * 
 	 * @param msg
 	 *            the message to be sent.
 	 * @exception IOException
-	 *                if an I/O error occur when sending the message.
+	 *                if an I/O error occur when sending the message, or if it
+	 *                could not be queued.
 	 */
 	final public void sendToClient(Object msg) throws IOException {
-		if (clientSocket == null || output == null)
-			throw new SocketException("socket does not exist");
+		if (closing)
+			return; // Discarded, see closeWhenFlushed()
+
+		if (channel != null) {
+			if (clientSocket == null)
+				throw new SocketException("socket does not exist");
+			if (readyToStop || !enqueue(encodeForQueue(msg)))
+				throw new IOException("message not queued: send queue full");
+			return;
+		}
+
+		ByteBuffer frame = codec == null ? null : encodeFrame(msg);
+		writeLock.lock();
+		try {
+			writeToStream(msg, frame);
+			flushStream();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Queues an object to be sent to the client and returns without waiting
+	 * for it to be written. If the send queue is full, the server's slow
+	 * consumer policy applies. With a codec, the message is encoded before
+	 * it is queued, so one that cannot be encoded is not sent, and the
+	 * connection stays open. A message already encoded by a broadcast is
+	 * queued as is.
+	 * 
+	 * @param msg
+	 *            the message to be sent.
+	 * @return true if the message was queued, false if it was discarded,
+	 *         could not be encoded, or the connection is closed.
+	 */
+	final public boolean sendToClientAsync(Object msg) {
+		if (readyToStop || closing)
+			return false;
 
-		output.writeObject(msg);
+		Object queued;
+		try {
+			queued = encodeForQueue(msg);
+		} catch (IOException ex) {
+			LOG.warn("Message to client {} not sent: {}", id, ex);
+			return false;
+		}
+		return enqueue(queued);
 	}
 
+	/**
+	 * Encodes a message into a frame ready to be queued, if there is a codec,
+	 * so that encoding fails on the caller's thread rather than on the
+	 * writer's.
+	 * 
+	 * @param msg
+	 *            the message to be sent.
+	 * @return the frame, or the message itself without a codec or if it is
+	 *         already encoded.
+	 * @exception IOException
+	 *                if the message cannot be encoded.
+	 */
+	private Object encodeForQueue(Object msg) throws IOException {
+		if (codec == null || msg instanceof SharedFrame)
+			return msg;
+		return SharedFrame.wrap(encodeFrame(msg));
+	}
+
+	/**
+	 * Queues a message, applying the slow consumer policy if the queue is
+	 * full, and makes sure it will be written.
+	 * 
+	 * @param msg
+	 *            the message, encoded if there is a codec.
+	 * @return true if the message was queued.
+	 */
+	private boolean enqueue(Object msg) {
+		if (!sendQueue.offer(msg) && !offerToFullQueue(msg))
+			return false;
+
+		server.countQueuedMessage();
+		scheduleWriter();
+		return true;
+	}
+
+	/**
+	 * Flushes the messages written to the client but still buffered. In
+	 * non-blocking mode, asks the event loop to write what is queued.
+	 * 
+	 * @exception IOException
+	 *                if an I/O error occur when flushing.
+	 */
+	final public void flush() throws IOException {
+		if (channel != null) {
+			scheduleWriter();
+			return;
+		}
+
+		writeLock.lock();
+		try {
+			flushStream();
+		} finally {
+			writeLock.unlock();
+		}
+	}
 
 	/**
 	 * Closes the client. If the connection is already closed, this call has no
@@ -125,16 +539,78 @@ public class ConnectionToClient extends Thread {
 	 */
 	final public void close() throws IOException {
 		readyToStop = true; // Set the flag that tells the thread to stop
+		if (!closed.compareAndSet(false, true))
+			return;
 
 		try {
 			closeAll();
 		} finally {
+			server.removeClient(this);
 			server.clientDisconnected(this);
 		}
 	}
 
+	/**
+	 * Closes the client once the messages sent to it so far are written, for
+	 * instance to tell it why it is disconnected. Messages sent after this
+	 * call are discarded. Messages from the client are handled until the
+	 * connection closes.
+	 * 
+	 * @exception IOException
+	 *                if the connection cannot wait and an error occurs when
+	 *                closing it at once.
+	 */
+	final public void closeWhenFlushed() throws IOException {
+		if (readyToStop || closing)
+			return;
+		closing = true;
+
+		if (sendQueue.offer(CLOSE) || offerToFullQueue(CLOSE))
+			scheduleWriter();
+		else
+			close();
+	}
+
 	// ACCESSING METHODS ------------------------------------------------
 
+	/**
+	 * @return the ID of the connection, unique within its server.
+	 */
+	final public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return true until the connection is closed. It is no longer alive by
+	 *         the time the server is told that it closed.
+	 */
+	final public boolean isAlive() {
+		return !readyToStop;
+	}
+
+	/**
+	 * @return the number of messages waiting in the send queue.
+	 */
+	final public int getSendQueueDepth() {
+		return sendQueue.size();
+	}
+
+	/**
+	 * @return the number of messages from this client decoded but not yet
+	 *         handled.
+	 */
+	final public int getInboundQueueDepth() {
+		return inboundQueue == null ? 0 : inboundQueue.size();
+	}
+
+	/**
+	 * @return the number of messages to this client discarded because its
+	 *         send queue was full.
+	 */
+	final public long getDroppedMessages() {
+		return droppedMessages.get();
+	}
+
 	/**
 	 * Returns the address of the client.
 	 * 
@@ -156,15 +632,19 @@ public class ConnectionToClient extends Thread {
 
 	/**
 	 * Saves arbitrary information about this client. Designed to be used by
-	 * concrete subclasses of AbstractServer. Based on a hash map.
+	 * concrete subclasses of AbstractServer. Based on a hash map. Information
+	 * read for every message is better kept with <code> setAttribute </code>.
 	 * 
 	 * @param infoType
 	 *            identifies the type of information
 	 * @param info
-	 *            the information itself.
+	 *            the information itself, or null to forget it.
 	 */
 	public void setInfo(String infoType, Object info) {
-		savedInfo.put(infoType, info);
+		if (info == null)
+			savedInfo.remove(infoType);
+		else
+			savedInfo.put(infoType, info);
 	}
 
 	/**
@@ -178,13 +658,86 @@ public class ConnectionToClient extends Thread {
 		return savedInfo.get(infoType);
 	}
 
+	/**
+	 * Sets an attribute of this client's session. The value is safely
+	 * published to any thread that reads it afterwards.
+	 *
+	 * @param key
+	 *            identifies the attribute.
+	 * @param value
+	 *            the value, or null to clear the attribute.
+	 */
+	public <T> void setAttribute(SessionKey<T> key, T value) {
+		AtomicReferenceArray<Object> current = attributes;
+		if (key.index < current.length()) {
+			current.set(key.index, value);
+			// Only a newer key makes the array grow; once one exists, a copy
+			// made meanwhile may have missed the value
+			if (current.length() >= SessionKey.count() && attributes == current)
+				return;
+		}
+
+		synchronized (attributesLock) {
+			current = attributes;
+			if (current.length() < SessionKey.count())
+				current = growAttributes(current);
+			current.set(key.index, value);
+		}
+	}
+
+	/**
+	 * Returns an attribute of this client's session, without locking or
+	 * hashing.
+	 *
+	 * @param key
+	 *            identifies the attribute.
+	 * @return the value, or null if it was never set.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getAttribute(SessionKey<T> key) {
+		AtomicReferenceArray<Object> current = attributes;
+		return key.index < current.length() ? (T) current.get(key.index) : null;
+	}
+
+	/**
+	 * Replaces the attributes with a copy large enough for every key created
+	 * so far. Called with <code> attributesLock </code> held, so that no
+	 * value is set in the old array during the copy.
+	 *
+	 * @param current
+	 *            the attributes.
+	 * @return the copy.
+	 */
+	private AtomicReferenceArray<Object> growAttributes(AtomicReferenceArray<Object> current) {
+		AtomicReferenceArray<Object> larger = new AtomicReferenceArray<Object>(SessionKey.count());
+		for (int i = 0; i < current.length(); i++)
+			larger.set(i, current.get(i));
+		attributes = larger;
+		return larger;
+	}
+
 	// RUN METHOD -------------------------------------------------------
 
 	/**
-	 * Constantly reads the client's input stream. Sends all objects that are
-	 * read to the server. Not to be called.
+	 * Opens the streams, then constantly reads the client's input stream.
+	 * Sends all objects that are read to the server. Not to be called.
 	 */
 	final public void run() {
+		try {
+			openStreams();
+		} catch (Exception exception) {
+			// The client never completed its connection: drop it silently
+			readyToStop = true;
+			if (!closed.compareAndSet(false, true))
+				return;
+			try {
+				closeAll();
+			} catch (Exception ex) {
+			}
+			server.removeClient(this);
+			return;
+		}
+
 		server.clientConnected(this);
 
 		// This loop reads the input stream and responds to messages
@@ -196,23 +749,652 @@ public class ConnectionToClient extends Thread {
 			while (!readyToStop) {
 				// This block waits until it reads a message from the client
 				// and then sends it for handling by the server
-				msg = input.readObject();
-				server.receiveMessageFromClient(msg, this);
+				msg = codec != null ? Frames.read(frameInput, codec, compressor) : input.readObject();
+				if (msg instanceof Frames.Control) {
+					handleControl((Frames.Control) msg);
+					continue;
+				}
+
+				// Wait until the message is within the rate limits
+				long wait;
+				while ((wait = admit()) > 0 && !readyToStop)
+					LockSupport.parkNanos(wait);
+				if (wait == 0)
+					deliver(msg);
 			}
 		} catch (Exception exception) {
-			if (!readyToStop) {
-				try {
-					closeAll();
-				} catch (Exception ex) {
+			connectionFailed(exception);
+		}
+	}
+
+	/**
+	 * Opens the streams of a blocking connection. The client must send its
+	 * stream header within the server's handshake timeout. Messages queued
+	 * meanwhile are written once the streams are open.
+	 * 
+	 * @exception IOException
+	 *                if the streams cannot be opened in time.
+	 */
+	private void openStreams() throws IOException {
+		clientSocket.setSoTimeout(server.getHandshakeTimeout());
+
+		writeLock.lock();
+		try {
+			OutputStream buffered = new BufferedOutputStream(
+					new MeteredOutputStream(clientSocket.getOutputStream(), server.getMetrics()),
+					server.getOutputBufferSize());
+			if (codec != null) {
+				frameOutput = new DataOutputStream(buffered);
+			} else {
+				output = new ManagedObjectOutputStream(buffered, server.getResetMessages(), server.getResetBytes());
+				output.flush(); // Send the stream header
+			}
+		} finally {
+			writeLock.unlock();
+		}
+
+		InputStream metered = new MeteredInputStream(clientSocket.getInputStream(), server.getMetrics());
+		if (codec != null)
+			frameInput = new DataInputStream(metered);
+		else
+			input = new ObjectInputStream(metered); // Waits for the header
+
+		clientSocket.setSoTimeout(0);
+		handshakeDone = true;
+		if (!sendQueue.isEmpty())
+			scheduleWriter();
+	}
+
+	// NON-BLOCKING METHODS ---------------------------------------------
+
+	/**
+	 * Registers the channel with the selector of its event loop, then writes
+	 * what was queued before, such as broadcasts sent between the time the
+	 * connection was added to the server and this call. Called on the loop
+	 * thread.
+	 * 
+	 * @param selector
+	 *            the selector of the event loop.
+	 */
+	void register(Selector selector) {
+		try {
+			key = channel.register(selector, SelectionKey.OP_READ, this);
+		} catch (IOException exception) {
+			connectionFailed(exception);
+			return;
+		}
+
+		if (!sendQueue.isEmpty())
+			flushPending();
+		server.clientConnected(this);
+	}
+
+	/**
+	 * Reads what the channel has available and hands every complete frame to
+	 * the server. Called on the loop thread when the channel is readable.
+	 */
+	void handleReadable() {
+		try {
+			int read = channel.read(readBuffer);
+			if (read < 0)
+				throw new EOFException("connection closed by client");
+			server.getMetrics().countBytesIn(read);
+
+			readBuffer.flip();
+			decodeFrames();
+		} catch (Exception exception) {
+			connectionFailed(exception);
+		}
+	}
+
+	/**
+	 * Hands every complete frame of the read buffer to the server, until the
+	 * inbound queue is full. The buffer is flipped for reading on entry, and
+	 * ready for the next read on return.
+	 * 
+	 * @exception IOException
+	 *                if a frame is invalid.
+	 */
+	private void decodeFrames() throws IOException {
+		int needed = 0;
+		while (!readyToStop && !readPaused && !rateDelayed && readBuffer.remaining() >= Frames.HEADER_LENGTH) {
+			int start = readBuffer.position();
+			int header = readBuffer.getInt(start);
+			int length = Frames.checkLength(header);
+			if (readBuffer.remaining() < Frames.HEADER_LENGTH + length) {
+				needed = Frames.HEADER_LENGTH + length;
+				break;
+			}
+
+			// Control frames are not messages, and escape the rate limits
+			if ((header & Frames.CONTROL) != 0) {
+				handleControl((Frames.Control) Frames.decode(header,
+						readBuffer.slice(start + Frames.HEADER_LENGTH, length), codec, compressor));
+				readBuffer.position(start + Frames.HEADER_LENGTH + length);
+				continue;
+			}
+
+			// Apply the rate limits before spending time on decoding
+			long wait = admit();
+			if (wait > 0) {
+				rateDelayed = true;
+				updateInterest();
+				eventLoop.schedule(this, this::endRateDelay, wait);
+				break;
+			}
+			if (wait < 0) {
+				readBuffer.position(start + Frames.HEADER_LENGTH + length);
+				continue;
+			}
+
+			Object msg = Frames.decode(header, readBuffer.slice(start + Frames.HEADER_LENGTH, length), codec,
+					compressor);
+			readBuffer.position(start + Frames.HEADER_LENGTH + length);
+			if (inboundQueue == null)
+				server.receiveMessageFromClient(msg, this);
+			else
+				queueFromEventLoop(msg);
+		}
+		readBuffer.compact();
+
+		// Make room for a frame larger than the buffer
+		if (needed > readBuffer.capacity()) {
+			ByteBuffer larger = ByteBuffer.allocate(needed);
+			readBuffer.flip();
+			larger.put(readBuffer);
+			readBuffer = larger;
+		}
+	}
+
+	/**
+	 * Queues a decoded message for a handler thread, or stops reading the
+	 * channel if the inbound queue is full. Called on the loop thread.
+	 * 
+	 * @param msg
+	 *            the message decoded.
+	 */
+	private void queueFromEventLoop(Object msg) {
+		if (!inboundQueue.offer(msg)) {
+			pendingInbound = msg;
+			readPaused = true;
+			server.countReadStall();
+			updateInterest();
+
+			// The handler may have emptied the queue before seeing the pause
+			if (!inboundQueue.offer(msg))
+				return;
+			pendingInbound = null;
+			readPaused = false;
+			updateInterest();
+		}
+		scheduleHandler();
+	}
+
+	/**
+	 * Queues the message that did not fit in the inbound queue, then decodes
+	 * what was read meanwhile and reads the channel again. Called on the loop
+	 * thread once a handler has made room.
+	 */
+	private void resumeReading() {
+		resumeScheduled.set(false);
+		if (readyToStop || !readPaused || !inboundQueue.offer(pendingInbound))
+			return;
+
+		pendingInbound = null;
+		readPaused = false;
+		scheduleHandler();
+		try {
+			readBuffer.flip();
+			decodeFrames();
+			updateInterest();
+		} catch (Exception exception) {
+			connectionFailed(exception);
+		}
+	}
+
+	/**
+	 * Decodes what was read meanwhile and reads the channel again, once the
+	 * message over a rate limit is within it. Called on the loop thread.
+	 */
+	private void endRateDelay() {
+		rateDelayed = false;
+		if (readyToStop || readPaused)
+			return; // Resumed once there is room in the inbound queue
+
+		try {
+			readBuffer.flip();
+			decodeFrames();
+			updateInterest();
+		} catch (Exception exception) {
+			connectionFailed(exception);
+		}
+	}
+
+	/**
+	 * Asks the event loop to report what the connection is waiting for:
+	 * readability unless reads are paused, writability if frames are left.
+	 */
+	private void updateInterest() {
+		boolean reading = !readPaused && !rateDelayed;
+		key.interestOps((reading ? SelectionKey.OP_READ : 0) | (writePending ? SelectionKey.OP_WRITE : 0));
+	}
+
+	/**
+	 * Writes as many queued messages as the channel accepts, several frames
+	 * at a time. Asks the event loop to report writability if some are left.
+	 * Called on the loop thread. Until the channel is registered, the queued
+	 * messages wait for register() to write them.
+	 */
+	void flushPending() {
+		flushScheduled.set(false);
+		if (key == null)
+			return;
+		try {
+			while (true) {
+				// Top up the batch from the send queue
+				Object msg;
+				while (!closePending && batchSize < writeBatch.length && (msg = sendQueue.poll()) != null) {
+					if (msg == CLOSE) {
+						closePending = true;
+						break;
+					}
+					writeBatch[batchSize++] = msg instanceof SharedFrame ? ((SharedFrame) msg).view(clientInflates)
+							: encodeFrame(msg);
+					server.getMetrics().countMessageOut();
 				}
+				if (batchSize == 0) {
+					if (closePending) {
+						closeQuietly();
+						return;
+					}
+					break;
+				}
+
+				server.getMetrics().countBytesOut(channel.write(writeBatch, 0, batchSize));
+
+				// Drop the frames written completely
+				int written = 0;
+				while (written < batchSize && !writeBatch[written].hasRemaining())
+					written++;
+				System.arraycopy(writeBatch, written, writeBatch, 0, batchSize - written);
+				Arrays.fill(writeBatch, batchSize - written, batchSize, null);
+				batchSize -= written;
 
-				server.clientException(this, exception);
+				if (batchSize > 0) {
+					writePending = true;
+					updateInterest();
+					return;
+				}
 			}
+			writePending = false;
+			updateInterest();
+		} catch (Exception exception) {
+			connectionFailed(exception);
 		}
 	}
 
 	// METHODS TO BE USED FROM WITHIN THE FRAMEWORK ONLY ----------------
 
+	/**
+	 * Applies the slow consumer policy to a message that did not fit in the
+	 * send queue.
+	 * 
+	 * @param msg
+	 *            the message to be sent.
+	 * @return true if the message was eventually queued.
+	 */
+	private boolean offerToFullQueue(Object msg) {
+		SlowConsumerPolicy policy = server.getSlowConsumerPolicy();
+		if (policy == SlowConsumerPolicy.BLOCK && EventLoop.inAnyEventLoop())
+			policy = SlowConsumerPolicy.DROP_OLDEST; // No event loop may wait, for any client
+
+		switch (policy) {
+		case DROP_OLDEST:
+			while (!sendQueue.offer(msg)) {
+				if (sendQueue.poll() != null)
+					messageDropped();
+			}
+			return true;
+
+		case BLOCK:
+			try {
+				if (sendQueue.offer(msg, server.getSendTimeout(), TimeUnit.MILLISECONDS))
+					return true;
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			messageDropped();
+			return false;
+
+		default:
+			messageDropped();
+			server.countSlowConsumerDisconnect();
+			LOG.warn("Disconnecting client {}: send queue full", id);
+			try {
+				close();
+			} catch (IOException ex) {
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Checks the next message from the client against the rate limits, and
+	 * takes the action of the server if it is over one of them.
+	 * 
+	 * @return zero if the message may be handled, a negative value if it is
+	 *         to be discarded, or the number of nanoseconds to wait before
+	 *         trying again.
+	 */
+	private long admit() {
+		RateLimiter globalLimiter = server.getGlobalRateLimiter();
+		if (rateLimiter == null && globalLimiter == null)
+			return 0;
+
+		long now = System.nanoTime();
+		long wait = rateLimiter == null ? 0 : rateLimiter.tryAcquire(now);
+		if (wait == 0 && globalLimiter != null) {
+			wait = globalLimiter.tryAcquire(now);
+			if (wait > 0 && rateLimiter != null)
+				rateLimiter.release();
+		}
+		if (wait == 0)
+			return 0;
+
+		server.countRateLimited();
+		switch (server.getRateLimitAction()) {
+		case DELAY:
+			return wait;
+
+		case DROP:
+			return -1;
+
+		default:
+			server.countRateLimitDisconnect();
+			LOG.warn("Disconnecting client {}: over the rate limit", id);
+			try {
+				close();
+			} catch (IOException ex) {
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Hands a message decoded by the blocking reader to the server, either
+	 * directly or through the inbound queue. Waits while the queue is full.
+	 * 
+	 * @param msg
+	 *            the message decoded.
+	 * @exception InterruptedException
+	 *                if the reader is interrupted while waiting.
+	 */
+	private void deliver(Object msg) throws InterruptedException {
+		if (inboundQueue == null) {
+			server.receiveMessageFromClient(msg, this);
+			return;
+		}
+
+		if (!inboundQueue.offer(msg)) {
+			server.countReadStall();
+			inboundQueue.put(msg); // Released by the handler, or by closeAll
+		}
+		scheduleHandler();
+	}
+
+	/**
+	 * Makes sure a handler thread will drain the inbound queue.
+	 */
+	private void scheduleHandler() {
+		if (handlerScheduled.compareAndSet(false, true))
+			submitHandler();
+	}
+
+	/**
+	 * Submits the draining of the inbound queue to the handler threads.
+	 * Called with the handler flag set, which stays set while a rejected
+	 * task waits to be submitted again.
+	 */
+	void submitHandler() {
+		try {
+			handlerExecutor.execute(this::drainInboundQueue);
+		} catch (RejectedExecutionException ex) {
+			if (readyToStop || !server.handlerRejected(this, handlerExecutor))
+				handlerScheduled.set(false); // The server no longer runs handlers
+		}
+	}
+
+	/**
+	 * Hands the queued messages to the server, in order. Run by a handler
+	 * thread, which is given up after a batch so that one busy client cannot
+	 * keep it from the others.
+	 */
+	private void drainInboundQueue() {
+		try {
+			Object msg;
+			int handled = 0;
+			while (!readyToStop && (msg = inboundQueue.poll()) != null) {
+				if (readPaused && resumeScheduled.compareAndSet(false, true))
+					eventLoop.execute(this, this::resumeReading);
+
+				server.receiveMessageFromClient(msg, this);
+				if (++handled == MAX_HANDLER_BATCH && !inboundQueue.isEmpty()) {
+					submitHandler(); // Still scheduled, behind the other clients
+					server.retryRejectedHandler();
+					return;
+				}
+			}
+		} catch (Exception exception) {
+			handlerScheduled.set(false);
+			connectionFailed(exception);
+			server.retryRejectedHandler();
+			return;
+		}
+
+		handlerScheduled.set(false);
+		// A message queued after the last poll may have found the flag set
+		if (!inboundQueue.isEmpty() && !readyToStop)
+			scheduleHandler();
+		server.retryRejectedHandler();
+	}
+
+	/**
+	 * Encodes a message into a frame, compressed if the client can inflate
+	 * it and it is large enough.
+	 * 
+	 * @param msg
+	 *            the message to encode.
+	 * @return the frame.
+	 * @exception IOException
+	 *                if the message cannot be encoded.
+	 */
+	private ByteBuffer encodeFrame(Object msg) throws IOException {
+		ByteBuffer frame = Frames.encode(msg, codec);
+		return clientInflates ? compressor.compress(frame) : frame;
+	}
+
+	/**
+	 * Handles a control frame from the client. If the client announces it
+	 * can inflate compressed frames and the server compresses, the server
+	 * answers with its own capabilities, from which point each side sends
+	 * compressed frames.
+	 * 
+	 * @param control
+	 *            the capabilities of the client.
+	 */
+	private void handleControl(Frames.Control control) {
+		if (compressor == null || !control.has(Frames.Control.DEFLATE) || clientInflates)
+			return;
+		clientInflates = true;
+		sendToClientAsync(SharedFrame.wrap(Frames.control(Frames.Control.DEFLATE)));
+	}
+
+	/**
+	 * Writes a message to the blocking streams. Called with the write lock
+	 * held.
+	 * 
+	 * @param msg
+	 *            the message, possibly already encoded by a broadcast.
+	 * @param frame
+	 *            the message encoded by the codec, if it has one and the
+	 *            message is not already encoded.
+	 * @exception IOException
+	 *                if an I/O error occurs.
+	 */
+	private void writeToStream(Object msg, ByteBuffer frame) throws IOException {
+		if (clientSocket == null || (output == null && frameOutput == null))
+			throw new SocketException("socket does not exist");
+
+		if (msg instanceof SharedFrame)
+			((SharedFrame) msg).writeTo(frameOutput, clientInflates);
+		else if (frame != null)
+			Frames.write(frame, frameOutput);
+		else
+			output.writeMessage(msg);
+		server.getMetrics().countMessageOut();
+	}
+
+	/**
+	 * Flushes the buffered output stream. Called with the write lock held.
+	 * 
+	 * @exception IOException
+	 *                if an I/O error occurs.
+	 */
+	private void flushStream() throws IOException {
+		if (frameOutput != null)
+			frameOutput.flush();
+		else if (output != null)
+			output.flush();
+	}
+
+	/**
+	 * Counts a message discarded because the send queue was full.
+	 */
+	private void messageDropped() {
+		droppedMessages.incrementAndGet();
+		server.countDroppedMessage();
+	}
+
+	/**
+	 * Makes sure the queued messages will be written: by the event loop in
+	 * non-blocking mode, otherwise by a writer thread of the server.
+	 */
+	private void scheduleWriter() {
+		if (channel != null) {
+			if (eventLoop.inEventLoop())
+				flushPending();
+			else if (flushScheduled.compareAndSet(false, true))
+				eventLoop.execute(this, this::flushPending);
+		} else if (handshakeDone && writerScheduled.compareAndSet(false, true)) {
+			try {
+				server.getWriterExecutor().execute(this::drainSendQueue);
+			} catch (RuntimeException ex) {
+				// The server is closing and no longer runs writers
+				writerScheduled.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Writes the queued messages to the object stream until the queue is
+	 * empty. Run by a writer thread in blocking mode.
+	 */
+	private void drainSendQueue() {
+		do {
+			try {
+				long flushDelay = TimeUnit.MICROSECONDS.toNanos(server.getFlushDelay());
+				long flushDeadline = 0;
+				boolean unflushed = false;
+
+				while (true) {
+					Object msg = sendQueue.poll();
+					if (msg == null && unflushed) {
+						// Linger for more messages until the flush deadline
+						long wait = flushDeadline - System.nanoTime();
+						if (wait > 0)
+							msg = sendQueue.poll(wait, TimeUnit.NANOSECONDS);
+					}
+					if (msg == null)
+						break;
+					if (msg == CLOSE) {
+						if (unflushed) {
+							writeLock.lock();
+							try {
+								flushStream();
+							} finally {
+								writeLock.unlock();
+							}
+						}
+						closeQuietly();
+						return;
+					}
+
+					ByteBuffer frame = codec == null || msg instanceof SharedFrame ? null : encodeFrame(msg);
+					writeLock.lock();
+					try {
+						writeToStream(msg, frame);
+						if (!unflushed) {
+							unflushed = true;
+							flushDeadline = System.nanoTime() + flushDelay;
+						}
+						if (flushDelay > 0 && System.nanoTime() - flushDeadline >= 0) {
+							flushStream();
+							unflushed = false;
+						}
+					} finally {
+						writeLock.unlock();
+					}
+				}
+
+				if (unflushed) {
+					writeLock.lock();
+					try {
+						flushStream();
+					} finally {
+						writeLock.unlock();
+					}
+				}
+			} catch (Exception exception) {
+				sendQueue.clear();
+				connectionFailed(exception);
+			} finally {
+				writerScheduled.set(false);
+			}
+			// A message queued after the last poll may have found the flag set
+		} while (!sendQueue.isEmpty() && !readyToStop && writerScheduled.compareAndSet(false, true));
+	}
+
+	/**
+	 * Closes the connection on a writer, once the close marker is reached.
+	 */
+	private void closeQuietly() {
+		try {
+			close();
+		} catch (IOException ex) {
+		}
+	}
+
+	/**
+	 * Closes the connection after an I/O or decoding error, or an unchecked
+	 * exception on its event loop, and reports it to the server, unless the
+	 * connection was being closed anyway.
+	 * 
+	 * @param exception
+	 *            the exception raised.
+	 */
+	void connectionFailed(Exception exception) {
+		if (!readyToStop && closed.compareAndSet(false, true)) {
+			readyToStop = true;
+			try {
+				closeAll();
+			} catch (Exception ex) {
+			}
+
+			server.removeClient(this);
+			server.clientException(this, exception);
+		}
+	}
+
 	/**
 	 * Closes all connection to the server.
 	 * 
@@ -221,7 +1403,7 @@ public class ConnectionToClient extends Thread {
 	 */
 	private void closeAll() throws IOException {
 		try {
-			// Close the socket
+			// Close the socket, and with it the channel if there is one
 			if (clientSocket != null)
 				clientSocket.close();
 
@@ -232,13 +1414,25 @@ public class ConnectionToClient extends Thread {
 			// Close the input stream
 			if (input != null)
 				input.close();
+
+			// Close the frame streams
+			if (frameOutput != null)
+				frameOutput.close();
+			if (frameInput != null)
+				frameInput.close();
 		} finally {
+			sendQueue.clear();
+			if (inboundQueue != null)
+				inboundQueue.clear();
+
 			// Set the streams and the sockets to NULL no matter what
 			// Doing so allows, but does not require, any finalizers
 			// of these objects to reclaim system resources if and
 			// when they are garbage collected.
 			output = null;
 			input = null;
+			frameOutput = null;
+			frameInput = null;
 			clientSocket = null;
 		}
 	}
@@ -252,5 +1446,55 @@ public class ConnectionToClient extends Thread {
 		} catch (IOException e) {
 		}
 	}
+
+	// INNER CLASSES ****************************************************
+
+	/**
+	 * Counts the bytes read from the socket of a blocking connection.
+	 */
+	private static final class MeteredInputStream extends FilterInputStream {
+		private final ServerMetrics metrics;
+
+		MeteredInputStream(InputStream in, ServerMetrics metrics) {
+			super(in);
+			this.metrics = metrics;
+		}
+
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0)
+				metrics.countBytesIn(1);
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = in.read(b, off, len);
+			if (read > 0)
+				metrics.countBytesIn(read);
+			return read;
+		}
+	}
+
+	/**
+	 * Counts the bytes written to the socket of a blocking connection.
+	 */
+	private static final class MeteredOutputStream extends FilterOutputStream {
+		private final ServerMetrics metrics;
+
+		MeteredOutputStream(OutputStream out, ServerMetrics metrics) {
+			super(out);
+			this.metrics = metrics;
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			metrics.countBytesOut(1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			metrics.countBytesOut(len);
+		}
+	}
 }
 // End of ConnectionToClient class
@@ -0,0 +1,302 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.server;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An event loop multiplexes many client channels on a single thread when the
+ * server runs in non-blocking mode. Each <code> ConnectionToClient </code>
+ * is bound to one loop for its whole life; the loop reads its frames, hands
+ * them to the server and drains its pending writes. Work submitted from other
+ * threads is queued and run by the loop between two selections, and work
+ * can be deferred on the loop with a timer.
+ * <p>
+ * All work done by the loop is done for one connection. If that work throws
+ * an unchecked exception, in the framework or in a hook of the server, the
+ * connection is closed and the exception reported to
+ * <code> clientException </code>; the loop goes on serving the others.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ * @see ocsf.server.AbstractServer#setEventLoopThreads(int)
+ */
+final class EventLoop implements Runnable {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The event loop run by the current thread, of any server, or null.
+	 */
+	private static final ThreadLocal<EventLoop> CURRENT = new ThreadLocal<EventLoop>();
+
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * The server that owns this loop.
+	 */
+	private final AbstractServer server;
+
+	/**
+	 * The selector watching the channels bound to this loop.
+	 */
+	private final Selector selector;
+
+	/**
+	 * Tasks submitted from other threads, run by the loop thread.
+	 */
+	private final Queue<Task> tasks = new ConcurrentLinkedQueue<Task>();
+
+	/**
+	 * Tasks deferred by the loop thread itself, soonest first. Only used by
+	 * the loop thread.
+	 */
+	private final PriorityQueue<Timer> timers = new PriorityQueue<Timer>();
+
+	/**
+	 * The thread running the loop.
+	 */
+	private final Thread thread;
+
+	/**
+	 * Cleared to make the loop exit.
+	 */
+	private volatile boolean running;
+
+	// CONSTRUCTORS *****************************************************
+
+	/**
+	 * Constructs an event loop. The loop does not run until started.
+	 *
+	 * @param server
+	 *            the server that owns this loop.
+	 * @param name
+	 *            the name of the loop thread.
+	 * @exception IOException
+	 *                if the selector cannot be opened.
+	 */
+	EventLoop(AbstractServer server, String name) throws IOException {
+		this.server = server;
+		this.selector = Selector.open();
+		this.thread = new Thread(this, name);
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * Starts the loop thread.
+	 */
+	void start() {
+		running = true;
+		thread.start();
+	}
+
+	/**
+	 * Asks the loop to stop. Channels are not closed by this call.
+	 */
+	void shutdown() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * @return true if the calling thread is the loop thread.
+	 */
+	boolean inEventLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * @return true if the calling thread runs an event loop, this one or any
+	 *         other, of any server. Such a thread must not wait.
+	 */
+	static boolean inAnyEventLoop() {
+		return CURRENT.get() != null;
+	}
+
+	/**
+	 * Runs a task on the loop thread.
+	 *
+	 * @param client
+	 *            the connection the task is for.
+	 * @param task
+	 *            the task to run.
+	 */
+	void execute(ConnectionToClient client, Runnable task) {
+		tasks.add(new Task(client, task));
+		selector.wakeup();
+	}
+
+	/**
+	 * Runs a task on the loop thread after a delay. Called on the loop
+	 * thread.
+	 *
+	 * @param client
+	 *            the connection the task is for.
+	 * @param task
+	 *            the task to run.
+	 * @param delay
+	 *            the delay, in nanoseconds.
+	 */
+	void schedule(ConnectionToClient client, Runnable task, long delay) {
+		timers.add(new Timer(System.nanoTime() + delay, client, task));
+	}
+
+	/**
+	 * Binds a newly accepted connection to this loop.
+	 *
+	 * @param client
+	 *            the connection, built on a non-blocking channel.
+	 */
+	void register(ConnectionToClient client) {
+		execute(client, () -> client.register(selector));
+	}
+
+	// RUN METHOD -------------------------------------------------------
+
+	/**
+	 * Selects ready channels and services them until shut down. Not to be
+	 * called.
+	 */
+	public void run() {
+		CURRENT.set(this);
+		try {
+			while (running) {
+				select();
+				runTasks();
+				runTimers();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					ConnectionToClient client = (ConnectionToClient) key.attachment();
+					try {
+						if (key.isValid() && key.isWritable())
+							client.flushPending();
+						if (key.isValid() && key.isReadable())
+							client.handleReadable();
+					} catch (RuntimeException exception) {
+						fail(client, exception);
+					}
+				}
+			}
+		} catch (IOException exception) {
+			if (running)
+				server.listeningException(exception);
+		} finally {
+			try {
+				selector.close();
+			} catch (IOException ex) {
+			}
+		}
+	}
+
+	// METHODS TO BE USED FROM WITHIN THE FRAMEWORK ONLY ----------------
+
+	/**
+	 * Waits for ready channels, submitted tasks, or the next timer.
+	 *
+	 * @exception IOException
+	 *                if the selector fails.
+	 */
+	private void select() throws IOException {
+		Timer next = timers.peek();
+		if (next == null) {
+			selector.select();
+			return;
+		}
+
+		long wait = next.deadline - System.nanoTime();
+		if (wait <= 0)
+			selector.selectNow();
+		else
+			selector.select(Math.max(1, (wait + 999999) / 1000000));
+	}
+
+	/**
+	 * Runs the timers that are due.
+	 */
+	private void runTimers() {
+		long now = System.nanoTime();
+		Timer next;
+		while ((next = timers.peek()) != null && next.deadline - now <= 0) {
+			timers.poll();
+			next.run();
+		}
+	}
+
+	/**
+	 * Runs the tasks submitted since the last selection.
+	 */
+	private void runTasks() {
+		Task task;
+		while ((task = tasks.poll()) != null)
+			task.run();
+	}
+
+	/**
+	 * Closes a connection whose work threw an unchecked exception, and
+	 * reports it, without letting it stop the loop.
+	 *
+	 * @param client
+	 *            the connection.
+	 * @param exception
+	 *            the exception thrown.
+	 */
+	private static void fail(ConnectionToClient client, RuntimeException exception) {
+		try {
+			client.connectionFailed(exception);
+		} catch (RuntimeException ex) {
+			// clientException threw as well: the connection is closed anyway
+		}
+	}
+
+	// INNER CLASSES ****************************************************
+
+	/**
+	 * A task for a connection.
+	 */
+	private static class Task {
+		final ConnectionToClient client;
+		final Runnable task;
+
+		Task(ConnectionToClient client, Runnable task) {
+			this.client = client;
+			this.task = task;
+		}
+
+		void run() {
+			try {
+				task.run();
+			} catch (RuntimeException exception) {
+				fail(client, exception);
+			}
+		}
+	}
+
+	/**
+	 * A task deferred until a deadline.
+	 */
+	private static final class Timer extends Task implements Comparable<Timer> {
+		final long deadline;
+
+		Timer(long deadline, ConnectionToClient client, Runnable task) {
+			super(client, task);
+			this.deadline = deadline;
+		}
+
+		public int compareTo(Timer other) {
+			return Long.signum(deadline - other.deadline);
+		}
+	}
+}
+// End of EventLoop class
@@ -0,0 +1,34 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.server;
+
+/**
+ * What a server does with a message from a client that is sending faster
+ * than its rate limit, or faster than the global rate limit of the server
+ * allows.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ * @see ocsf.server.AbstractServer#setRateLimitAction(RateLimitAction)
+ */
+public enum RateLimitAction {
+	/**
+	 * Discard the message without handling it.
+	 */
+	DROP,
+
+	/**
+	 * Stop reading from the client until the message is within the limit,
+	 * so that the client is slowed down by TCP flow control.
+	 */
+	DELAY,
+
+	/**
+	 * Close the connection to the client.
+	 */
+	DISCONNECT
+}
+// End of RateLimitAction enum
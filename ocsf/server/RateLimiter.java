@@ -0,0 +1,89 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket limiting a rate of messages, with room for a burst.
+ * <p>
+ * The bucket is kept as the single number of the generic cell rate
+ * algorithm: the time at which it would be full again if no more messages
+ * came. Taking a token moves that time forward by one emission interval,
+ * with a compare-and-set, so the limiter can be shared by many threads and
+ * allocates nothing.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+final class RateLimiter {
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * The time between two tokens, in nanoseconds.
+	 */
+	private final long interval;
+
+	/**
+	 * How far ahead of the present the theoretical arrival time may go:
+	 * one interval for each message of the burst.
+	 */
+	private final long tolerance;
+
+	/**
+	 * The theoretical arrival time of the next message, on the scale of
+	 * System.nanoTime().
+	 */
+	private final AtomicLong arrivalTime;
+
+	// CONSTRUCTORS *****************************************************
+
+	/**
+	 * Constructs a limiter, with a full bucket.
+	 *
+	 * @param messagesPerSecond
+	 *            the sustained rate allowed.
+	 * @param burst
+	 *            the number of messages allowed at once.
+	 */
+	RateLimiter(double messagesPerSecond, int burst) {
+		if (!(messagesPerSecond > 0) || burst < 1)
+			throw new IllegalArgumentException("rate and burst must be positive");
+		this.interval = Math.max(1, (long) (1e9 / messagesPerSecond));
+		this.tolerance = interval * burst;
+		this.arrivalTime = new AtomicLong(System.nanoTime());
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * Takes a token if one is available.
+	 *
+	 * @param now
+	 *            the current value of System.nanoTime().
+	 * @return zero if a token was taken, otherwise the number of nanoseconds
+	 *         until one is available.
+	 */
+	long tryAcquire(long now) {
+		while (true) {
+			long current = arrivalTime.get();
+			long next = (current - now > 0 ? current : now) + interval;
+			long wait = next - now - tolerance;
+			if (wait > 0)
+				return wait;
+			if (arrivalTime.compareAndSet(current, next))
+				return 0;
+		}
+	}
+
+	/**
+	 * Gives back a token taken for a message that was not let through.
+	 */
+	void release() {
+		arrivalTime.addAndGet(-interval);
+	}
+}
+// End of RateLimiter class
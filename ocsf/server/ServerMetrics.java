@@ -0,0 +1,238 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import ocsf.common.LatencyHistogram;
+
+/**
+ * The metrics of a server: the messages and bytes that went through it, how
+ * long the handling of a message and the fan-out of a broadcast took, and
+ * the state of its connections and queues.
+ * <p>
+ * Counters are <code> LongAdder </code>s and durations go to a
+ * <code> LatencyHistogram </code>, so recording costs the threads of the
+ * server little and never makes them wait for each other. The metrics can be
+ * read from the server, printed with <code> report() </code>, or published
+ * over JMX.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ * @see ocsf.server.AbstractServer#getMetrics()
+ */
+public final class ServerMetrics implements ServerMetricsMBean {
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * The server measured.
+	 */
+	private final AbstractServer server;
+
+	private final LongAdder messagesIn = new LongAdder();
+
+	private final LongAdder messagesOut = new LongAdder();
+
+	private final LongAdder bytesIn = new LongAdder();
+
+	private final LongAdder bytesOut = new LongAdder();
+
+	private final LongAdder totalConnections = new LongAdder();
+
+	/**
+	 * The time handleMessageFromClient took for each message.
+	 */
+	private final LatencyHistogram handlerLatency = new LatencyHistogram();
+
+	/**
+	 * The time each broadcast took to encode its message and queue it for
+	 * every recipient.
+	 */
+	private final LatencyHistogram broadcastTime = new LatencyHistogram();
+
+	/**
+	 * The time of the last report, and the counters then, from which the
+	 * next report computes rates.
+	 */
+	private long lastReportTime = System.nanoTime();
+	private long lastMessagesIn;
+	private long lastMessagesOut;
+	private long lastConnections;
+
+	// CONSTRUCTORS *****************************************************
+
+	ServerMetrics(AbstractServer server) {
+		this.server = server;
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	public long getMessagesIn() {
+		return messagesIn.sum();
+	}
+
+	public long getMessagesOut() {
+		return messagesOut.sum();
+	}
+
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	public int getActiveConnections() {
+		return server.getNumberOfClients();
+	}
+
+	public long getTotalConnections() {
+		return totalConnections.sum();
+	}
+
+	public double getHandlerLatencyMean() {
+		return handlerLatency.getMean() / 1000;
+	}
+
+	public long getHandlerLatencyP50() {
+		return micros(handlerLatency.getPercentile(50));
+	}
+
+	public long getHandlerLatencyP99() {
+		return micros(handlerLatency.getPercentile(99));
+	}
+
+	public long getHandlerLatencyP999() {
+		return micros(handlerLatency.getPercentile(99.9));
+	}
+
+	public long getHandlerLatencyMax() {
+		return micros(handlerLatency.getMax());
+	}
+
+	public long getBroadcasts() {
+		return broadcastTime.getCount();
+	}
+
+	public long getBroadcastTimeP50() {
+		return micros(broadcastTime.getPercentile(50));
+	}
+
+	public long getBroadcastTimeP99() {
+		return micros(broadcastTime.getPercentile(99));
+	}
+
+	public int getInboundQueueDepth() {
+		return server.getInboundQueueDepth();
+	}
+
+	public int getSendQueueDepth() {
+		return server.getSendQueueDepth();
+	}
+
+	public int getMaxSendQueueDepth() {
+		int max = 0;
+		for (ConnectionToClient client : server.getClientConnections())
+			max = Math.max(max, client.getSendQueueDepth());
+		return max;
+	}
+
+	public long getDroppedMessages() {
+		return server.getDroppedMessageCount();
+	}
+
+	public long getRateLimitedMessages() {
+		return server.getRateLimitedCount();
+	}
+
+	public void resetLatencies() {
+		handlerLatency.reset();
+		broadcastTime.reset();
+	}
+
+	/**
+	 * @return the handler latencies, in nanoseconds.
+	 */
+	public LatencyHistogram getHandlerLatency() {
+		return handlerLatency;
+	}
+
+	/**
+	 * @return the broadcast times, in nanoseconds.
+	 */
+	public LatencyHistogram getBroadcastTime() {
+		return broadcastTime;
+	}
+
+	/**
+	 * Describes the metrics in a few lines of text. Rates are over the time
+	 * since the previous report.
+	 *
+	 * @return the report.
+	 */
+	public synchronized String report() {
+		long now = System.nanoTime();
+		double seconds = Math.max(1e-9, (now - lastReportTime) / 1e9);
+		long in = getMessagesIn();
+		long out = getMessagesOut();
+		long connections = getTotalConnections();
+
+		String report = String.format("Connections: %d active, %d total, %.1f/s accepted%n"
+				+ "Messages: %d in (%.1f/s), %d out (%.1f/s)%n"
+				+ "Bytes: %d in, %d out%n"
+				+ "Handler latency (us): mean %.1f, p50 %d, p99 %d, p99.9 %d, max %d%n"
+				+ "Broadcasts: %d, fan-out time (us): p50 %d, p99 %d%n"
+				+ "Queues: %d inbound, %d outbound (at most %d for one client), %d dropped, %d rate limited",
+				getActiveConnections(), connections, (connections - lastConnections) / seconds,
+				in, (in - lastMessagesIn) / seconds, out, (out - lastMessagesOut) / seconds,
+				getBytesIn(), getBytesOut(),
+				getHandlerLatencyMean(), getHandlerLatencyP50(), getHandlerLatencyP99(), getHandlerLatencyP999(),
+				getHandlerLatencyMax(),
+				getBroadcasts(), getBroadcastTimeP50(), getBroadcastTimeP99(),
+				getInboundQueueDepth(), getSendQueueDepth(), getMaxSendQueueDepth(), getDroppedMessages(),
+				getRateLimitedMessages());
+
+		lastReportTime = now;
+		lastMessagesIn = in;
+		lastMessagesOut = out;
+		lastConnections = connections;
+		return report;
+	}
+
+	// METHODS TO BE USED FROM WITHIN THE FRAMEWORK ONLY ----------------
+
+	void recordMessageIn(long handlerNanos) {
+		messagesIn.increment();
+		handlerLatency.record(handlerNanos);
+	}
+
+	void countMessageOut() {
+		messagesOut.increment();
+	}
+
+	void countBytesIn(long bytes) {
+		bytesIn.add(bytes);
+	}
+
+	void countBytesOut(long bytes) {
+		bytesOut.add(bytes);
+	}
+
+	void countConnection() {
+		totalConnections.increment();
+	}
+
+	void recordBroadcast(long nanos) {
+		broadcastTime.record(nanos);
+	}
+
+	private static long micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+}
+// End of ServerMetrics class
@@ -0,0 +1,61 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.server;
+
+/**
+ * The management interface of <code> ServerMetrics </code>, through which
+ * JMX clients such as JConsole read the metrics of a server. Durations are
+ * in microseconds.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ * @see ocsf.server.AbstractServer#registerMetricsMBean()
+ */
+public interface ServerMetricsMBean {
+	long getMessagesIn();
+
+	long getMessagesOut();
+
+	long getBytesIn();
+
+	long getBytesOut();
+
+	int getActiveConnections();
+
+	long getTotalConnections();
+
+	double getHandlerLatencyMean();
+
+	long getHandlerLatencyP50();
+
+	long getHandlerLatencyP99();
+
+	long getHandlerLatencyP999();
+
+	long getHandlerLatencyMax();
+
+	long getBroadcasts();
+
+	long getBroadcastTimeP50();
+
+	long getBroadcastTimeP99();
+
+	int getInboundQueueDepth();
+
+	int getSendQueueDepth();
+
+	int getMaxSendQueueDepth();
+
+	long getDroppedMessages();
+
+	long getRateLimitedMessages();
+
+	/**
+	 * Forgets the latencies recorded so far. Counters are kept.
+	 */
+	void resetLatencies();
+}
+// End of ServerMetricsMBean interface
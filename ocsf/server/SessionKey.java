@@ -0,0 +1,75 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names one attribute of the session of each client, such as its login ID,
+ * and gives the type of its value.
+ * <p>
+ * Each key is given a fixed slot when it is created, so reading the
+ * attribute with <code> ConnectionToClient.getAttribute </code> is an array
+ * read rather than a hash lookup. Keys are meant to be created once, as
+ * constants of the concrete server, not for each client or message.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @param <T>
+ *            the type of the attribute.
+ * @version September 2025 (2.15)
+ */
+public final class SessionKey<T> {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The number of keys created so far, which is also the slot of the next.
+	 */
+	private static final AtomicInteger keyCount = new AtomicInteger();
+
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * The name of the attribute, for display only.
+	 */
+	private final String name;
+
+	/**
+	 * The slot of the attribute in every connection.
+	 */
+	final int index;
+
+	// CONSTRUCTORS *****************************************************
+
+	/**
+	 * Creates a key with a slot of its own.
+	 *
+	 * @param name
+	 *            the name of the attribute, for display only.
+	 */
+	public SessionKey(String name) {
+		this.name = name;
+		this.index = keyCount.getAndIncrement();
+	}
+
+	// CLASS METHODS ****************************************************
+
+	/**
+	 * @return the number of keys created so far.
+	 */
+	static int count() {
+		return keyCount.get();
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * @return the name of the attribute.
+	 */
+	public String toString() {
+		return name;
+	}
+}
+// End of SessionKey class
@@ -0,0 +1,147 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+import ocsf.common.Codec;
+import ocsf.common.FrameCompressor;
+import ocsf.common.Frames;
+
+/**
+ * A message encoded once into an immutable frame so that a broadcast can
+ * write the same bytes to every client instead of serializing the message
+ * again for each of them. Every connection writes through its own view of
+ * the same buffer.
+ * <p>
+ * With compression, the frame is also compressed once, by the first
+ * connection that can take it compressed, and shared with the others that
+ * can.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ */
+final class SharedFrame {
+	// INSTANCE VARIABLES ***********************************************
+
+	/**
+	 * The encoded frame, header included. Never modified, and never read but
+	 * through a view.
+	 */
+	private final ByteBuffer frame;
+
+	/**
+	 * The compressor of the frame, or null if it is never compressed.
+	 */
+	private final FrameCompressor compressor;
+
+	/**
+	 * The frame compressed, or the frame itself if it does not compress;
+	 * null until a connection needs it.
+	 */
+	private volatile ByteBuffer compressed;
+
+	// CONSTRUCTORS *****************************************************
+
+	private SharedFrame(ByteBuffer frame, FrameCompressor compressor) {
+		this.frame = frame;
+		this.compressor = compressor;
+	}
+
+	// CLASS METHODS ****************************************************
+
+	/**
+	 * Encodes a message into a shared frame. A direct buffer saves the copy
+	 * each channel write would otherwise make, but costs more to allocate, so
+	 * it only pays off for a large enough number of recipients.
+	 *
+	 * @param msg
+	 *            the message to encode.
+	 * @param codec
+	 *            the codec producing the payload.
+	 * @param direct
+	 *            true to hold the frame in a direct buffer.
+	 * @param compressor
+	 *            the compressor for the connections that take compressed
+	 *            frames, or null.
+	 * @return the shared frame.
+	 * @exception IOException
+	 *                if the message cannot be encoded.
+	 */
+	static SharedFrame encode(Object msg, Codec codec, boolean direct, FrameCompressor compressor)
+			throws IOException {
+		ByteBuffer encoded = Frames.encode(msg, codec);
+		return new SharedFrame(direct ? toDirect(encoded) : encoded,
+				compressor == null || encoded.remaining() - Frames.HEADER_LENGTH < compressor.getThreshold() ? null
+						: compressor);
+	}
+
+	/**
+	 * Wraps a frame already encoded, such as a control frame or a message
+	 * encoded for one client, to be queued like a message. It is not
+	 * compressed any further.
+	 *
+	 * @param frame
+	 *            the frame, header included.
+	 * @return the shared frame.
+	 */
+	static SharedFrame wrap(ByteBuffer frame) {
+		return new SharedFrame(frame, null);
+	}
+
+	private static ByteBuffer toDirect(ByteBuffer buffer) {
+		ByteBuffer copy = ByteBuffer.allocateDirect(buffer.remaining());
+		copy.put(buffer.duplicate()).flip();
+		return copy;
+	}
+
+	// INSTANCE METHODS *************************************************
+
+	/**
+	 * @param compress
+	 *            true if the connection takes compressed frames.
+	 * @return a new view of the frame, compressed if possible and asked for,
+	 *         positioned at its start, for one connection to write.
+	 */
+	ByteBuffer view(boolean compress) {
+		return (compress && compressor != null ? compressed() : frame).duplicate();
+	}
+
+	/**
+	 * @return the frame compressed, compressing it on the first call.
+	 */
+	private ByteBuffer compressed() {
+		ByteBuffer result = compressed;
+		if (result == null) {
+			synchronized (this) {
+				result = compressed;
+				if (result == null) {
+					result = compressor.compress(frame);
+					if (result != frame && frame.isDirect())
+						result = toDirect(result);
+					compressed = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the frame to a blocking stream.
+	 *
+	 * @param output
+	 *            the stream to write to.
+	 * @param compress
+	 *            true if the connection takes compressed frames.
+	 * @exception IOException
+	 *                if an I/O error occurs.
+	 */
+	void writeTo(OutputStream output, boolean compress) throws IOException {
+		Frames.write(view(compress), output);
+	}
+}
+// End of SharedFrame class
@@ -0,0 +1,37 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+
+package ocsf.server;
+
+/**
+ * What a server does with a message queued for a client whose send queue is
+ * full, that is, a client that does not read as fast as messages are sent to
+ * it.
+ * <p>
+ * Project Name: OCSF (Object Client-Server Framework)
+ * <p>
+ *
+ * @version September 2025 (2.15)
+ * @see ocsf.server.AbstractServer#setSlowConsumerPolicy(SlowConsumerPolicy)
+ */
+public enum SlowConsumerPolicy {
+	/**
+	 * Discard the oldest queued message to make room for the new one. The
+	 * default.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Close the connection to the client.
+	 */
+	DISCONNECT,
+
+	/**
+	 * Wait for room in the queue for at most the server's send timeout, then
+	 * discard the new message. An event loop thread cannot wait, whichever
+	 * loop the client is on, and discards the oldest message instead. Other
+	 * threads, such as handler threads, wait.
+	 */
+	BLOCK
+}
+// End of SlowConsumerPolicy enum
@@ -0,0 +1,125 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ocsf.client.AbstractClient;
+import ocsf.server.AbstractServer;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * Sends many distinct messages over one object stream connection, which the
+ * server sends back, and fails unless the heap retained at the end is about
+ * what it was after the first messages. Without the resets of the stream by
+ * <code> ManagedObjectOutputStream </code>, both ends would keep every
+ * message in the handle tables of their object streams, and the heap would
+ * grow with each message.
+ * <p>
+ * The retained heap is measured after a full collection. The limit on its
+ * growth is far below what the messages would take if they were retained.
+ * The system properties <code> soak.messages </code> and
+ * <code> soak.port </code> change the number of messages and the port.
+ */
+class StreamResetSoakTest {
+	// CLASS VARIABLES **************************************************
+
+	/**
+	 * The most messages sent and not yet echoed.
+	 */
+	private static final int WINDOW = 1024;
+
+	/**
+	 * The number of messages sent.
+	 */
+	private static final int MESSAGES = Integer.getInteger("soak.messages", 200000);
+
+	/**
+	 * The largest growth of the retained heap accepted, in bytes.
+	 */
+	private static final long MAX_GROWTH = 2 * 1024 * 1024;
+
+	// INSTANCE VARIABLES ***********************************************
+
+	private final Semaphore window = new Semaphore(WINDOW);
+
+	private AbstractServer server;
+
+	private AbstractClient client;
+
+	// INSTANCE METHODS *************************************************
+
+	@BeforeEach
+	void setUp() throws Exception {
+		int port = Integer.getInteger("soak.port", 5610);
+		server = new AbstractServer(port) {
+			@Override
+			protected void handleMessageFromClient(Object msg, ConnectionToClient client) {
+				try {
+					client.sendToClient(msg);
+				} catch (IOException ex) {
+				}
+			}
+		};
+		server.listen();
+		client = new AbstractClient("localhost", port) {
+			@Override
+			protected void handleMessageFromServer(Object msg) {
+				window.release();
+			}
+		};
+		client.openConnection();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		if (client != null)
+			client.closeConnection();
+		if (server != null)
+			server.close();
+	}
+
+	@Test
+	void retainedHeapStaysFlat() throws Exception {
+		int baselineAt = MESSAGES / 10;
+		long baseline = 0;
+		for (int i = 0; i < MESSAGES; i++) {
+			assertTrue(window.tryAcquire(10, TimeUnit.SECONDS), "no echo within 10 seconds after " + i + " messages");
+			client.sendToServer("soak message number " + i);
+			if (i == baselineAt)
+				baseline = retainedHeap();
+		}
+
+		long growth = retainedHeap() - baseline;
+		assertTrue(growth < MAX_GROWTH, () -> "retained heap grew by " + growth / 1024 + " KB over "
+				+ (MESSAGES - baselineAt) + " messages");
+	}
+
+	/**
+	 * @return the heap used once every echo has arrived and the heap is
+	 *         collected.
+	 */
+	private long retainedHeap() throws Exception {
+		client.flush();
+		assertTrue(window.tryAcquire(WINDOW, 10, TimeUnit.SECONDS), "echoes missing");
+		window.release(WINDOW);
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		memory.gc();
+		memory.gc();
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
+// End of StreamResetSoakTest class